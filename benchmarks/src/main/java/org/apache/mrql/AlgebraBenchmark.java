@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/** The in-memory group-by and join operators of MapReduceAlgebra */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AlgebraBenchmark {
+    @Param({ "100000" })
+    int size;
+
+    @Param({ "1000" })
+    int keys;
+
+    Bag pairs;
+    Bag left;
+    Bag right;
+    Bag left_partitioned;
+    Bag right_partitioned;
+    Bag input;
+    Bag left_input;
+    Bag right_input;
+
+    final static Function key = BenchmarkData.field(0);
+
+    // the reducer of hash_join from (a,b) to (a.key,b.value)
+    final static Function join_reducer = new Function () {
+            public MRData eval ( final MRData x ) {
+                Tuple p = (Tuple)x;
+                return new Tuple(((Tuple)p.first()).first(),((Tuple)p.second()).get(2));
+            }
+        };
+
+    // the accumulator of mergeGroupByJoin that sums the values of b
+    final static Function sum = new Function () {
+            public MRData eval ( final MRData x ) {
+                Tuple p = (Tuple)x;
+                Tuple b = (Tuple)((Tuple)p.second()).second();
+                return new MR_double(((MR_double)p.first()).get()+((MR_double)b.get(2)).get());
+            }
+        };
+
+    final static Function group_reducer = new Function () {
+            public MRData eval ( final MRData x ) {
+                return x;
+            }
+        };
+
+    @Setup
+    public void setup () {
+        pairs = BenchmarkData.pairs(size,keys);
+        left = BenchmarkData.records(size,keys);
+        right = BenchmarkData.records(size/10,keys);
+        left_partitioned = BenchmarkData.partitioned(left,4);
+        right_partitioned = BenchmarkData.partitioned(right,4);
+    }
+
+    // the operators sort their inputs in place
+    @Setup(Level.Invocation)
+    public void copy () {
+        input = BenchmarkData.copy(pairs);
+        left_input = BenchmarkData.copy(left_partitioned);
+        right_input = BenchmarkData.copy(right_partitioned);
+    }
+
+    @Benchmark
+    public Bag groupBy () {
+        return MapReduceAlgebra.groupBy(input);
+    }
+
+    @Benchmark
+    public Bag hash_join () {
+        return MapReduceAlgebra.hash_join(key,key,join_reducer,left,right);
+    }
+
+    @Benchmark
+    public Bag mergeGroupByJoin () {
+        return MapReduceAlgebra.mergeGroupByJoin(key,key,key,key,sum,new MR_double(0),
+                                                 group_reducer,left_input,right_input);
+    }
+}
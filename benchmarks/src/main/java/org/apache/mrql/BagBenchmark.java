@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+
+/** Building, sorting, and spilling bags */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BagBenchmark {
+    @Param({ "100000" })
+    int size;
+
+    Bag records;
+    Bag unsorted;
+
+    @Setup
+    public void setup () {
+        records = BenchmarkData.records(size,size/10);
+    }
+
+    @Setup(Level.Invocation)
+    public void copy () {
+        unsorted = BenchmarkData.copy(records);
+    }
+
+    @Benchmark
+    public Bag add () {
+        Bag b = new Bag();
+        for ( MRData x: records )
+            b.add(x);
+        return b;
+    }
+
+    @Benchmark
+    public Bag sort () {
+        unsorted.sort();
+        return unsorted;
+    }
+
+    /** add the records to a bag that spills to a local file and then scan the bag */
+    @Benchmark
+    public int spill () throws IOException {
+        boolean hadoop_mode = Config.hadoop_mode;
+        long max_materialized_bag = Config.max_materialized_bag;
+        try {
+            Config.hadoop_mode = true;
+            Config.max_materialized_bag = size/4;
+            if (Plan.conf == null)
+                Plan.conf = new Configuration();
+            Bag b = new Bag();
+            for ( MRData x: records )
+                b.add(x);
+            int n = 0;
+            for ( MRData x: b )
+                n++;
+            return n;
+        } finally {
+            Config.hadoop_mode = hadoop_mode;
+            Config.max_materialized_bag = max_materialized_bag;
+            Plan.clean();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.*;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+
+/** Synthetic data for the benchmarks, derived from the range generator used by GeneratorDataSource */
+final class BenchmarkData {
+    /** a bag of n records (key,name,value), where key is in 0..keys-1 */
+    static Bag records ( final int n, final int keys ) {
+        Bag res = new Bag(n);
+        for ( MRData x: MapReduceAlgebra.generator(0,n-1) ) {
+            long i = ((MR_long)x).get();
+            res.add(new Tuple(new MR_int((int)(i*7919 % keys)),
+                              new MR_string("name"+i),
+                              new MR_double(i*0.5)));
+        };
+        return res;
+    }
+
+    /** a bag of n pairs (key,record) */
+    static Bag pairs ( final int n, final int keys ) {
+        Bag res = new Bag(n);
+        for ( MRData x: records(n,keys) )
+            res.add(new Tuple(((Tuple)x).first(),x));
+        return res;
+    }
+
+    /** tag each element of the bag with the partition number (key mod partitions) */
+    static Bag partitioned ( final Bag s, final int partitions ) {
+        Bag res = new Bag(s.size());
+        for ( MRData x: s )
+            res.add(new Tuple(new MR_int(((MR_int)((Tuple)x).first()).get() % partitions),x));
+        return res;
+    }
+
+    /** a copy of a materialized bag (some operators sort their input in place) */
+    static Bag copy ( final Bag s ) {
+        Bag res = new Bag(s.size());
+        for ( MRData x: s )
+            res.add(x);
+        return res;
+    }
+
+    /** the function that returns the i'th component of a tuple */
+    static Function field ( final int i ) {
+        return new Function () {
+            public MRData eval ( final MRData x ) {
+                return ((Tuple)x).get(i);
+            }
+        };
+    }
+
+    /** a value of the given MRQL type */
+    static MRData value ( final String type, final int i ) {
+        if (type.equals("boolean"))
+            return new MR_bool(i % 2 == 0);
+        else if (type.equals("byte"))
+            return new MR_byte(i);
+        else if (type.equals("short"))
+            return new MR_short((short)i);
+        else if (type.equals("int"))
+            return new MR_int(i);
+        else if (type.equals("long"))
+            return new MR_long(i*1000000007L);
+        else if (type.equals("float"))
+            return new MR_float(i*0.5);
+        else if (type.equals("double"))
+            return new MR_double(i*0.5);
+        else if (type.equals("char"))
+            return new MR_char((char)('a'+i % 26));
+        else if (type.equals("string"))
+            return new MR_string("a string value "+i);
+        else if (type.equals("tuple"))
+            return new Tuple(new MR_int(i),new MR_string("name"+i),new MR_double(i*0.5));
+        else if (type.equals("bag")) {
+            Bag b = new Bag();
+            for ( int j = 0; j < 10; j++ )
+                b.add(new MR_int(i+j));
+            return b;
+        } else if (type.equals("union"))
+            return new Union((byte)(i % 2),new MR_int(i));
+        throw new Error("Unknown type: "+type);
+    }
+
+    /** the serialized value */
+    static byte[] serialize ( final MRData x ) {
+        try {
+            DataOutputBuffer out = new DataOutputBuffer();
+            x.write(out);
+            byte[] b = new byte[out.getLength()];
+            System.arraycopy(out.getData(),0,b,0,b.length);
+            return b;
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    /** a temporary text file with the given contents */
+    static String text_file ( final String prefix, final String contents ) {
+        try {
+            File f = File.createTempFile(prefix,".txt");
+            f.deleteOnExit();
+            Writer out = new BufferedWriter(new FileWriter(f));
+            out.write(contents);
+            out.close();
+            return f.getPath();
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+    }
+}
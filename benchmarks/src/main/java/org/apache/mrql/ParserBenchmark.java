@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import org.apache.mrql.gen.*;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+
+/** The throughput of parsing and splitting text data sources (records per operation = size) */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({ "10000" })
+    int size;
+
+    String[] lines;
+    LineParser line_parser;
+    String json_file;
+    String xml_file;
+    final static String[] tags = { "rec" };
+
+    @Setup
+    public void setup () throws Exception {
+        lines = new String[size];
+        StringBuffer json = new StringBuffer("[\n");
+        StringBuffer xml = new StringBuffer("<data>\n");
+        int i = 0;
+        for ( MRData x: MapReduceAlgebra.generator(0,size-1) ) {
+            long n = ((MR_long)x).get();
+            lines[i++] = n+"|name"+n+"|"+(n*0.5);
+            json.append((n > 0) ? ",\n" : "").append("{\"rec\": {\"id\": ").append(n)
+                .append(", \"name\": \"name").append(n).append("\", \"value\": ").append(n*0.5).append("}}");
+            xml.append("<rec><id>").append(n).append("</id><name>name").append(n)
+                .append("</name><value>").append(n*0.5).append("</value></rec>\n");
+        };
+        json_file = BenchmarkData.text_file("mrql_json",json.append("\n]\n").toString());
+        xml_file = BenchmarkData.text_file("mrql_xml",xml.append("</data>\n").toString());
+        line_parser = new LineParser();
+        line_parser.initialize(new Trees(new StringLeaf("|"))
+                               .append(Tree.parse("type(tuple(long,string,double))")));
+    }
+
+    @Benchmark
+    public int line_parse () {
+        int n = 0;
+        for ( String line: lines )
+            n += line_parser.parse(line).size();
+        return n;
+    }
+
+    @Benchmark
+    public int json_split () {
+        JsonSplitter splitter = new JsonSplitter(tags,json_file,new DataOutputBuffer());
+        int n = 0;
+        while (splitter.hasNext())
+            n += splitter.next().getLength();
+        return n;
+    }
+
+    @Benchmark
+    public int xml_split () {
+        XMLSplitter splitter = new XMLSplitter(tags,xml_file,new DataOutputBuffer());
+        int n = 0;
+        while (splitter.hasNext())
+            n += splitter.next().getLength();
+        return n;
+    }
+}
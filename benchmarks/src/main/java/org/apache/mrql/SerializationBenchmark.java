@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+
+/** Serialization and raw (serialized) comparison of MRData for each type tag */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({ "boolean", "byte", "short", "int", "long", "float", "double", "char",
+             "string", "tuple", "bag", "union" })
+    String type;
+
+    MRData value;
+    MRContainer container;
+    byte[] x;
+    byte[] y;
+    int[] size = new int[1];
+    DataOutputBuffer out = new DataOutputBuffer();
+    DataInputBuffer in = new DataInputBuffer();
+
+    @Setup
+    public void setup () {
+        value = BenchmarkData.value(type,41);
+        container = new MRContainer(value);
+        x = BenchmarkData.serialize(value);
+        y = BenchmarkData.serialize(BenchmarkData.value(type,42));
+    }
+
+    @Benchmark
+    public DataOutputBuffer write () throws IOException {
+        out.reset();
+        container.write(out);
+        return out;
+    }
+
+    @Benchmark
+    public MRData read () throws IOException {
+        in.reset(x,x.length);
+        return MRContainer.read(in);
+    }
+
+    @Benchmark
+    public int compare () {
+        return MRContainer.compare(x,0,x.length,y,0,y.length,size);
+    }
+
+    @Benchmark
+    public int compare_deserialized () throws IOException {
+        in.reset(x,x.length);
+        MRData a = MRContainer.read(in);
+        in.reset(y,y.length);
+        return a.compareTo(MRContainer.read(in));
+    }
+}
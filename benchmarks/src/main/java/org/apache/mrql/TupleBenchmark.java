@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/** Hashing and comparison of tuples */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TupleBenchmark {
+    Tuple x;
+    Tuple y;
+    Tuple z;
+
+    @Setup
+    public void setup () {
+        x = (Tuple)BenchmarkData.value("tuple",41);
+        y = (Tuple)BenchmarkData.value("tuple",42);
+        z = (Tuple)BenchmarkData.value("tuple",41);
+    }
+
+    @Benchmark
+    public int hash_code () {
+        return x.hashCode();
+    }
+
+    @Benchmark
+    public int compare_different () {
+        return x.compareTo(y);
+    }
+
+    @Benchmark
+    public int compare_equal () {
+        return x.compareTo(z);
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.apache.mrql;
 
+import org.apache.mrql.gen.Tree;
 import org.apache.mrql.gen.Trees;
 import java.io.*;
 import org.apache.hadoop.fs.*;
@@ -49,12 +50,60 @@ final public class BSPBinaryInputFormat extends BSPMRQLFileInputFormat {
         }
     }
 
+    /** a record reader for a split of a columnar file (see ColumnarFile) */
+    public static class ColumnarRecordReader implements RecordReader<MRContainer,MRContainer> {
+        final ColumnarFile.Reader reader;
+        final MRData source_num_data;
+        long index = 0;
+
+        public ColumnarRecordReader ( FileSplit split,
+                                      BSPJob job,
+                                      int source_number,
+                                      Tree pushdown ) throws IOException {
+            reader = new ColumnarFile.Reader(split.getPath(),split.getStart(),split.getLength(),
+                                             pushdown,BSPPlan.getConfiguration(job));
+            source_num_data = new MR_int(source_number);
+        }
+
+        public MRContainer createKey () {
+            return new MRContainer(null);
+        }
+
+        public MRContainer createValue () {
+            return new MRContainer(null);
+        }
+
+        public boolean next ( MRContainer key, MRContainer value ) throws IOException {
+            if (!reader.hasNext())
+                return false;
+            value.set(new Tuple(source_num_data,reader.next()));
+            key.set(new MR_long(index++));
+            return true;
+        }
+
+        public long getPos () throws IOException { return index; }
+
+        public void close () throws IOException { reader.close(); }
+
+        public float getProgress () throws IOException { return reader.progress(); }
+
+        public void initialize ( InputSplit split, TaskAttemptContext context ) throws IOException { }
+    }
+
+    /** the record reader of a binary file (a sequence file or a columnar file) */
+    static RecordReader<MRContainer,MRContainer>
+              recordReader ( FileSplit split, BSPJob job, BinaryDataSource ds ) throws IOException {
+        if (ColumnarFile.columnar(split.getPath(),BSPPlan.getConfiguration(job)))
+            return new ColumnarRecordReader(split,job,ds.source_num,ds.pushdown);
+        return new BinaryInputRecordReader(split,job,ds.source_num);
+    }
+
     public RecordReader<MRContainer,MRContainer>
               getRecordReader ( InputSplit split,
                                 BSPJob job ) throws IOException {
         Configuration conf = BSPPlan.getConfiguration(job);
         String path = ((FileSplit)split).getPath().toString();
         BinaryDataSource ds = (BinaryDataSource)DataSource.get(path,conf);
-        return new BinaryInputRecordReader((FileSplit)split,job,ds.source_num);
+        return recordReader((FileSplit)split,job,ds);
     }
 }
@@ -74,7 +74,7 @@ final public class BSPPlan extends Plan {
 
         /** shuffle values to BSP peers based on uniform hashing on key */
         private static String shuffle ( MRData key ) {
-            return all_peer_names[Math.abs(key.hashCode()) % all_peer_names.length];
+            return all_peer_names[(MRContainer.hash(key) & Integer.MAX_VALUE) % all_peer_names.length];
         }
 
         /** to exit a BSP loop, all peers must agree to exit (this is used in BSPTranslate.bspSimplify) */
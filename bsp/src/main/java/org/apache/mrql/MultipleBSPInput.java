@@ -47,7 +47,7 @@ final public class MultipleBSPInput extends BSPMRQLFileInputFormat {
                                                                ds.source_num,
                                                                (Trees)((ParsedDataSource)ds).args);
         else if (ds instanceof BinaryDataSource)
-            return new BSPBinaryInputFormat.BinaryInputRecordReader((FileSplit)split,job,ds.source_num);
+            return BSPBinaryInputFormat.recordReader((FileSplit)split,job,(BinaryDataSource)ds);
         else if (ds instanceof GeneratorDataSource)
             return new BSPGeneratorInputFormat.GeneratorRecordReader((FileSplit)split,ds.source_num,job);
         else throw new Error("Unknown data source: "+ds+" for path "+path);
@@ -21,6 +21,7 @@ import java.util.*;
 import java.io.*;
 import org.apache.hadoop.io.*;
 import org.apache.hadoop.fs.*;
+import org.apache.mrql.gen.Tree;
 
 
 /**
@@ -28,13 +29,15 @@ import org.apache.hadoop.fs.*;
  *   There are 3 kinds of Bag implementations, which are converted at run-time, when necessary:
  *   1) vector-based (materialized): used for small bags (when size is less than Config.max_materialized_bag);
  *   2) stream-based: can be traversed only once; implemented as Java iterators;
- *   3) spilled to a local file: can be accessed multiple times
+ *   3) spilled to a local file: can be accessed multiple times.
+ *   A materialized Bag of flat tuples of basic values may also be stored column-wise (columnar)
  */
 public class Bag extends MRData implements Iterable<MRData> {
     private final static long serialVersionUID = 64629834894869L;
-    enum Modes { STREAMED, MATERIALIZED, SPILLED };
+    enum Modes { STREAMED, MATERIALIZED, SPILLED, COLUMNAR };
     private transient Modes mode;
     private transient ArrayList<MRData> content;      // content of a materialized bag
+    private transient BagColumns columns;             // content of a columnar bag
     private transient BagIterator iterator;           // iterator for a streamed bag
     private transient boolean consumed;               // true, if the stream has already been used
     private transient String path;                    // local path that contains the spilled bag
@@ -89,9 +92,46 @@ public class Bag extends MRData implements Iterable<MRData> {
         consumed = false;
     }
 
-    /** is the Bag stored in an ArrayList? */
+    /** is the Bag cached in memory (in an ArrayList or in columns)? */
     public boolean materialized () {
-        return mode == Modes.MATERIALIZED;
+        return mode == Modes.MATERIALIZED || mode == Modes.COLUMNAR;
+    }
+
+    /** is the Bag stored column-wise? */
+    public boolean columnar () {
+        return mode == Modes.COLUMNAR;
+    }
+
+    /** store a materialized Bag column-wise, if its elements are flat tuples of basic values
+     * @param type the static type of the Bag
+     * @return the Bag
+     */
+    public Bag columnar ( final Tree type ) {
+        if (mode != Modes.MATERIALIZED || type == null || content.size() < 2)
+            return this;
+        byte[] types = BagColumns.column_types(type);
+        if (types == null)
+            return this;
+        BagColumns cs = new BagColumns(types,BagColumns.tuple_elements(type),content.size());
+        for ( MRData e: content )
+            if (cs.conforms(e))
+                cs.add(e);
+            else return this;
+        cs.trim();
+        mode = Modes.COLUMNAR;
+        columns = cs;
+        content = null;
+        return this;
+    }
+
+    /** convert a columnar Bag back to an ArrayList */
+    private void decolumnize () {
+        ArrayList<MRData> c = new ArrayList<MRData>(columns.size());
+        for ( int i = 0; i < columns.size(); i++ )
+            c.add(columns.get(i));
+        mode = Modes.MATERIALIZED;
+        content = c;
+        columns = null;
     }
 
     /** is the Bag stream-based? */
@@ -106,6 +146,8 @@ public class Bag extends MRData implements Iterable<MRData> {
 
     /** return the Bag size (cache it in memory if necessary) */
     public int size () {
+        if (columnar())
+            return columns.size();
         if (materialized())
             return content.size();
         if (streamed() && consumed)
@@ -120,7 +162,9 @@ public class Bag extends MRData implements Iterable<MRData> {
 
     /** trim the ArrayList that caches the Bag */
     public void trim () {
-        if (materialized())
+        if (columnar())
+            columns.trim();
+        else if (materialized())
             content.trimToSize();
     }
 
@@ -129,6 +173,10 @@ public class Bag extends MRData implements Iterable<MRData> {
      * @return the n'th element
      */
     public MRData get ( final int n ) {
+        if (columnar())
+            if (n < size())
+                return columns.get(n);
+            else throw new Error("List index out of range: "+n);
         if (materialized())
             if (n < size())
                 return content.get(n);
@@ -152,6 +200,11 @@ public class Bag extends MRData implements Iterable<MRData> {
     public Bag set ( final int n, final MRData value ) {
         if (!materialized())
             throw new Error("Cannot replace an element of a non-materialized sequence");
+        if (columnar())
+            if (columns.conforms(value)) {
+                columns.set(n,value);
+                return this;
+            } else decolumnize();
         content.set(n,value);
         return this;
     }
@@ -177,6 +230,13 @@ public class Bag extends MRData implements Iterable<MRData> {
             } catch (IOException e) {
                 throw new Error("Cannot append an element to a spilled Bag: "+path);
             }
+        else if (columnar())
+            if (columns.conforms(x))
+                columns.add(x);
+            else {
+                decolumnize();
+                content.add(x);
+            }
         else content.add(x);
     }
 
@@ -201,7 +261,9 @@ public class Bag extends MRData implements Iterable<MRData> {
 
     /** make this Bag empty (cache it in memory if necessary) */
     public void clear () {
-        if (materialized())
+        if (columnar())
+            columns = null;
+        else if (materialized())
             content.clear();
         else if (streamed()) {
             if (writer != null)
@@ -214,6 +276,16 @@ public class Bag extends MRData implements Iterable<MRData> {
             path = null;
             mode = Modes.MATERIALIZED;
             content = new ArrayList<MRData>(100);
+        } else if (spilled()) {   // remove the spilled file
+            try {
+                if (writer != null)
+                    writer.close();
+                FileSystem.getLocal(Plan.conf).delete(new Path(path),false);
+            } catch (IOException ex) {
+                throw new Error(ex);
+            };
+            writer = null;
+            path = null;
         };
         mode = Modes.MATERIALIZED;
         content = new ArrayList<MRData>();
@@ -240,7 +312,7 @@ public class Bag extends MRData implements Iterable<MRData> {
     private static String new_path ( FileSystem fs ) throws IOException {
         Path p;
         do {
-            p = new Path("file://"+Config.tmpDirectory+"/mrql"+(random_generator.nextInt(1000000)));
+            p = new Path("file://"+Config.tmpDirectory+"/"+Plan.temporary_prefix+(random_generator.nextInt(1000000)));
         } while (p.getFileSystem(Plan.conf).exists(p));
         String path = p.toString();
         Plan.temporary_paths.add(path);
@@ -248,7 +320,7 @@ public class Bag extends MRData implements Iterable<MRData> {
     }
 
     /** spill the Bag to a local file */
-    private void spill () {
+    void spill () {
         if (!spilled() && Config.hadoop_mode)
             try {
                 if (Plan.conf == null)
@@ -264,6 +336,7 @@ public class Bag extends MRData implements Iterable<MRData> {
                     writer.append(new MRContainer(e),NullWritable.get());
                 mode = Modes.SPILLED;
                 content = null;
+                columns = null;
                 iterator = null;
             } catch (Exception e) {
                 throw new Error("Cannot spill a Bag to a local file");
@@ -293,7 +366,11 @@ public class Bag extends MRData implements Iterable<MRData> {
             } catch (Exception ex) {
                 throw new Error("Cannot sort a spilled bag");
             }
-        else Collections.sort(content);
+        else {
+            if (columnar())
+                decolumnize();
+            Collections.sort(content);
+        }
     }
 
     /** return the Bag Iterator */
@@ -328,6 +405,8 @@ public class Bag extends MRData implements Iterable<MRData> {
             } catch (IOException e) {
                 throw new Error("Cannot collect values from a spilled Bag");
             }
+        else if (columnar())
+            return columns.iterator();
         else if (materialized())
             return content.iterator();
         else {
@@ -378,7 +457,7 @@ public class Bag extends MRData implements Iterable<MRData> {
      * @param x the element to find
      */
     public boolean contains ( final MRData x ) {
-        if (materialized())
+        if (mode == Modes.MATERIALIZED)
             return content.contains(x);
         if (streamed() && consumed)
             throw new Error("*** The collection stream has already been consumed");
@@ -457,8 +536,7 @@ public class Bag extends MRData implements Iterable<MRData> {
             bag.add(data);
             data = MRContainer.read(in);
         };
-        if (bag.materialized())
-            bag.content.trimToSize();
+        bag.trim();
         return bag;
     }
 
@@ -469,6 +547,7 @@ public class Bag extends MRData implements Iterable<MRData> {
         iterator = null;
         path = null;
         writer = null;
+        columns = null;
         if (content == null)
             content = new ArrayList<MRData>(n);
         else {
@@ -492,6 +571,7 @@ public class Bag extends MRData implements Iterable<MRData> {
         iterator = null;
         path = null;
         writer = null;
+        columns = null;
         content = new ArrayList<MRData>(n);
         for ( int i = 0; i < n; i++ )
             add(MRContainer.read(in));
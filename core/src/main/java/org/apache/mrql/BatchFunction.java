@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.util.ArrayList;
+
+
+/**
+ * An anonymous function from MRData to a Bag that returns a few values for each argument,
+ * such as the functional argument of a select-where query. It can be evaluated over
+ * a batch of arguments in one call, without constructing a Bag for each result.
+ * BatchFunctions are generated by the BytecodeCompiler
+ */
+abstract public class BatchFunction extends Function {
+    /**
+     * Evaluate the function over a batch of arguments
+     * @param args the arguments
+     * @param size the number of arguments in args
+     * @param out the elements of the resulting bags are appended to out
+     */
+    abstract public void eval ( final MRData[] args, final int size, final ArrayList<MRData> out );
+}
@@ -17,20 +17,38 @@
  */
 package org.apache.mrql;
 
+import org.apache.mrql.gen.Tree;
 import org.apache.hadoop.conf.Configuration;
 
 
 /** A DataSource used for storing intermediate results and data dumps */
 final public class BinaryDataSource extends DataSource {
+    // the columns and the predicate pushed into the scans of columnar files (null if none; see ColumnarFile)
+    public Tree pushdown = null;
+
     BinaryDataSource ( int source_num, String path, Configuration conf ) {
         super(source_num,path,Evaluator.evaluator.binaryInputFormat(),conf);
     }
 
+    BinaryDataSource ( int source_num, String path, Tree pushdown, Configuration conf ) {
+        super(source_num,path,Evaluator.evaluator.binaryInputFormat(),conf);
+        this.pushdown = pushdown;
+    }
+
     BinaryDataSource ( String path, Configuration conf ) {
         super(-1,path,Evaluator.evaluator.binaryInputFormat(),conf);
     }
 
+    /** the pushdown of the binary data source of a file (null if none) */
+    public static Tree pushdown ( String path, Configuration conf ) {
+        if (DataSource.dataSourceDirectory.isEmpty() && conf.get("mrql.data.source.directory") == null)
+            return null;
+        DataSource ds = DataSource.get(path,conf);
+        return (ds instanceof BinaryDataSource) ? ((BinaryDataSource)ds).pushdown : null;
+    }
+
     public String toString () {
-        return "Binary"+separator+source_num+separator+path;
+        return "Binary"+separator+source_num+separator+path
+               +((pushdown == null) ? "" : separator+pushdown);
     }
 }
@@ -0,0 +1,461 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+
+/**
+ * A minimal writer of Java class files (used by the bytecode compiler).
+ * It generates version 49 class files, which do not need stack map frames.
+ */
+final class ClassFile {
+    final static int ACC_PUBLIC = 0x0001;
+    final static int ACC_STATIC = 0x0008;
+    final static int ACC_FINAL = 0x0010;
+    final static int ACC_SUPER = 0x0020;
+
+    final static int ICONST_0 = 3;
+    final static int BIPUSH = 16;
+    final static int SIPUSH = 17;
+    final static int LDC_W = 19;
+    final static int LDC2_W = 20;
+    final static int ILOAD = 21;
+    final static int ALOAD = 25;
+    final static int AALOAD = 50;
+    final static int ISTORE = 54;
+    final static int ASTORE = 58;
+    final static int AASTORE = 83;
+    final static int POP = 87;
+    final static int DUP = 89;
+    final static int IINC = 132;
+    final static int IFEQ = 153;
+    final static int IFNE = 154;
+    final static int IF_ICMPGE = 162;
+    final static int GOTO = 167;
+    final static int ARETURN = 176;
+    final static int RETURN = 177;
+    final static int GETSTATIC = 178;
+    final static int GETFIELD = 180;
+    final static int PUTFIELD = 181;
+    final static int INVOKEVIRTUAL = 182;
+    final static int INVOKESPECIAL = 183;
+    final static int INVOKESTATIC = 184;
+    final static int NEW = 187;
+    final static int ANEWARRAY = 189;
+    final static int CHECKCAST = 192;
+    final static int INSTANCEOF = 193;
+
+    final String name;          // the binary class name, eg, org.apache.mrql.MRQL_Lambda_1
+    final String internal_name; // the internal class name, eg, org/apache/mrql/MRQL_Lambda_1
+    final String super_name;
+    private final ByteArrayOutputStream pool_bytes = new ByteArrayOutputStream(1000);
+    private final DataOutputStream pool = new DataOutputStream(pool_bytes);
+    private final HashMap<String,Integer> constants = new HashMap<String,Integer>();
+    private int pool_size = 1;
+    private final ByteArrayOutputStream field_bytes = new ByteArrayOutputStream(100);
+    private final DataOutputStream fields = new DataOutputStream(field_bytes);
+    private int fields_count = 0;
+    private final ArrayList<byte[]> methods = new ArrayList<byte[]>();
+
+    ClassFile ( String name, Class<?> super_class ) {
+        this.name = name;
+        internal_name = name.replace('.','/');
+        super_name = super_class.getName().replace('.','/');
+    }
+
+    /** the JVM type descriptor of a Java class */
+    static String descriptor ( Class<?> c ) {
+        if (c == void.class) return "V";
+        if (c == boolean.class) return "Z";
+        if (c == byte.class) return "B";
+        if (c == char.class) return "C";
+        if (c == short.class) return "S";
+        if (c == int.class) return "I";
+        if (c == long.class) return "J";
+        if (c == float.class) return "F";
+        if (c == double.class) return "D";
+        if (c.isArray())
+            return c.getName().replace('.','/');
+        return "L"+c.getName().replace('.','/')+";";
+    }
+
+    /** the JVM method descriptor of a method with the given parameter and return types */
+    static String descriptor ( Class<?>[] params, Class<?> ret ) {
+        StringBuffer sb = new StringBuffer("(");
+        for ( Class<?> c: params )
+            sb.append(descriptor(c));
+        return sb.append(")").append(descriptor(ret)).toString();
+    }
+
+    /** the number of stack words taken by a value of type c */
+    private static int size ( Class<?> c ) {
+        return (c == void.class) ? 0 : (c == long.class || c == double.class) ? 2 : 1;
+    }
+
+    private static int size ( Class<?>[] cs ) {
+        int n = 0;
+        for ( Class<?> c: cs )
+            n += size(c);
+        return n;
+    }
+
+    private int constant ( String key, int tag, int words, Object a, Object b ) {
+        Integer n = constants.get(key);
+        if (n != null)
+            return n.intValue();
+        try {
+            pool.writeByte(tag);
+            switch (tag) {
+            case 1: pool.writeUTF((String)a); break;
+            case 3: pool.writeInt(((Integer)a).intValue()); break;
+            case 6: pool.writeDouble(((Double)a).doubleValue()); break;
+            case 7: case 8: pool.writeShort(((Integer)a).intValue()); break;
+            default: pool.writeShort(((Integer)a).intValue());
+                     pool.writeShort(((Integer)b).intValue());
+            }
+        } catch (IOException ex) {
+            throw new Error(ex);
+        };
+        int index = pool_size;
+        pool_size += words;
+        if (pool_size > 0xFFFF)
+            throw new Error("The constant pool of class "+name+" is too large");
+        constants.put(key,index);
+        return index;
+    }
+
+    int utf8 ( String s ) { return constant("U"+s,1,1,s,null); }
+
+    int class_ref ( String internal ) { return constant("C"+internal,7,1,utf8(internal),null); }
+
+    int class_ref ( Class<?> c ) {
+        return class_ref(c.isArray() ? descriptor(c) : c.getName().replace('.','/'));
+    }
+
+    int string_ref ( String s ) { return constant("S"+s,8,1,utf8(s),null); }
+
+    int int_ref ( int n ) { return constant("I"+n,3,1,n,null); }
+
+    int double_ref ( double d ) { return constant("D"+Double.doubleToLongBits(d),6,2,d,null); }
+
+    private int name_and_type ( String n, String desc ) {
+        return constant("N"+n+":"+desc,12,1,utf8(n),utf8(desc));
+    }
+
+    int field_ref ( String owner, String n, String desc ) {
+        return constant("F"+owner+"."+n+":"+desc,9,1,class_ref(owner),name_and_type(n,desc));
+    }
+
+    int method_ref ( String owner, String n, String desc ) {
+        return constant("M"+owner+"."+n+":"+desc,10,1,class_ref(owner),name_and_type(n,desc));
+    }
+
+    /** add a field to this class */
+    void field ( int access, String n, Class<?> type ) {
+        try {
+            fields.writeShort(access);
+            fields.writeShort(utf8(n));
+            fields.writeShort(utf8(descriptor(type)));
+            fields.writeShort(0);
+            fields_count++;
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    /** start a new method in this class; its code is added to the class by Code.end */
+    Code method ( int access, String n, Class<?>[] params, Class<?> ret ) {
+        return new Code(access,n,descriptor(params,ret),
+                        size(params)+(((access & ACC_STATIC) == 0) ? 1 : 0));
+    }
+
+    /** a jump target inside a method */
+    final static class Label {
+        int position = -1;
+        int stack = -1;
+        final ArrayList<Integer> jumps = new ArrayList<Integer>();
+    }
+
+    /** the bytecode of a method */
+    final class Code {
+        final int access;
+        final String method_name;
+        final String method_descriptor;
+        private byte[] code = new byte[256];
+        private int pc = 0;
+        private int stack = 0;
+        private int max_stack = 0;
+        private int locals;
+        private int max_locals;
+        private final ArrayList<Label> labels = new ArrayList<Label>();
+
+        Code ( int access, String n, String desc, int args ) {
+            this.access = access;
+            method_name = n;
+            method_descriptor = desc;
+            locals = max_locals = args;
+        }
+
+        private void emit ( int b ) {
+            if (pc == code.length)
+                code = Arrays.copyOf(code,code.length*2);
+            code[pc++] = (byte)b;
+        }
+
+        private void emit2 ( int s ) {
+            emit(s >> 8);
+            emit(s);
+        }
+
+        private void stack ( int delta ) {
+            stack += delta;
+            if (stack > max_stack)
+                max_stack = stack;
+        }
+
+        /** emit an instruction without operands that changes the stack by delta words */
+        void op ( int opcode, int delta ) {
+            emit(opcode);
+            stack(delta);
+        }
+
+        /** emit an instruction with a two-byte constant pool operand */
+        void op ( int opcode, int index, int delta ) {
+            emit(opcode);
+            emit2(index);
+            stack(delta);
+        }
+
+        /** allocate a new local variable */
+        int new_local () {
+            int n = locals++;
+            if (locals > max_locals)
+                max_locals = locals;
+            return n;
+        }
+
+        void aload ( int n ) {
+            if (n < 4)
+                op(42+n,1);
+            else { emit(ALOAD); emit(n); stack(1); }
+        }
+
+        void astore ( int n ) {
+            if (n < 4)
+                op(75+n,-1);
+            else { emit(ASTORE); emit(n); stack(-1); }
+        }
+
+        void iload ( int n ) {
+            emit(ILOAD); emit(n); stack(1);
+        }
+
+        void istore ( int n ) {
+            emit(ISTORE); emit(n); stack(-1);
+        }
+
+        /** increment the int local variable n by d */
+        void iinc ( int n, int d ) {
+            emit(IINC); emit(n); emit(d);
+        }
+
+        void push ( int n ) {
+            if (n >= -1 && n <= 5)
+                op(ICONST_0+n,1);
+            else if (n >= Byte.MIN_VALUE && n <= Byte.MAX_VALUE) {
+                emit(BIPUSH); emit(n); stack(1);
+            } else if (n >= Short.MIN_VALUE && n <= Short.MAX_VALUE) {
+                emit(SIPUSH); emit2(n); stack(1);
+            } else op(LDC_W,int_ref(n),1);
+        }
+
+        void push ( double d ) {
+            op(LDC2_W,double_ref(d),2);
+        }
+
+        void push ( String s ) {
+            op(LDC_W,string_ref(s),1);
+        }
+
+        void push_class ( Class<?> c ) {
+            op(LDC_W,class_ref(c),1);
+        }
+
+        /** emit NEW and DUP for an object of class c */
+        void new_object ( Class<?> c ) {
+            op(NEW,class_ref(c),1);
+            op(DUP,1);
+        }
+
+        void new_object ( ClassFile c ) {
+            op(NEW,class_ref(c.internal_name),1);
+            op(DUP,1);
+        }
+
+        void checkcast ( Class<?> c ) {
+            if (c != MRData.class && c != Object.class)
+                op(CHECKCAST,class_ref(c),0);
+        }
+
+        void instance_of ( Class<?> c ) {
+            op(INSTANCEOF,class_ref(c),0);
+        }
+
+        /** call the constructor of c with the given parameter types */
+        void construct ( Class<?> c, Class<?>... params ) throws Exception {
+            c.getConstructor(params);   // make sure it exists and is public
+            op(INVOKESPECIAL,method_ref(c.getName().replace('.','/'),"<init>",descriptor(params,void.class)),
+               -size(params)-1);
+        }
+
+        /** call the public method n of c with the given parameter types */
+        Class<?> invoke ( Class<?> c, String n, Class<?>... params ) throws Exception {
+            return invoke(c.getMethod(n,params));
+        }
+
+        /** call a public Java method */
+        Class<?> invoke ( Method m ) {
+            Class<?> ret = m.getReturnType();
+            Class<?>[] params = m.getParameterTypes();
+            boolean is_static = Modifier.isStatic(m.getModifiers());
+            op(is_static ? INVOKESTATIC : INVOKEVIRTUAL,
+               method_ref(m.getDeclaringClass().getName().replace('.','/'),m.getName(),descriptor(params,ret)),
+               size(ret)-size(params)-(is_static ? 0 : 1));
+            return ret;
+        }
+
+        /** call the default constructor of the superclass of this class */
+        void super_constructor () {
+            op(INVOKESPECIAL,method_ref(super_name,"<init>","()V"),-1);
+        }
+
+        /** call a method of a generated class */
+        void invoke ( int opcode, ClassFile c, String n, Class<?>[] params, Class<?> ret ) {
+            op(opcode,method_ref(c.internal_name,n,descriptor(params,ret)),
+               size(ret)-size(params)-((opcode == INVOKESTATIC) ? 0 : 1));
+        }
+
+        /** read the public static field n of c */
+        void get_static ( Class<?> c, String n ) throws Exception {
+            Field f = c.getField(n);
+            op(GETSTATIC,field_ref(c.getName().replace('.','/'),n,descriptor(f.getType())),size(f.getType()));
+        }
+
+        void get_field ( String n, Class<?> type ) {
+            op(GETFIELD,field_ref(internal_name,n,descriptor(type)),size(type)-1);
+        }
+
+        void put_field ( String n, Class<?> type ) {
+            op(PUTFIELD,field_ref(internal_name,n,descriptor(type)),-size(type)-1);
+        }
+
+        /** jump to label if the int on top of the stack satisfies the condition opcode (or always for GOTO);
+         *  IF_ICMPGE compares the two ints on top of the stack */
+        void jump ( int opcode, Label label ) {
+            if (opcode == IF_ICMPGE)
+                stack(-2);
+            else if (opcode != GOTO)
+                stack(-1);
+            if (label.stack < 0)
+                label.stack = stack;
+            label.jumps.add(pc);
+            emit(opcode);
+            emit2(0);
+            if (!labels.contains(label))
+                labels.add(label);
+        }
+
+        /** the next instruction is the target of label */
+        void mark ( Label label ) {
+            label.position = pc;
+            if (label.stack >= 0)
+                stack = label.stack;
+            else label.stack = stack;
+            if (!labels.contains(label))
+                labels.add(label);
+        }
+
+        /** finish the method and add it to the class */
+        void end () {
+            for ( Label l: labels )
+                for ( int p: l.jumps ) {
+                    int offset = l.position-p;
+                    if (l.position < 0 || offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                        throw new Error("Unresolved jump in method "+method_name+" of class "+name);
+                    code[p+1] = (byte)(offset >> 8);
+                    code[p+2] = (byte)offset;
+                };
+            if (pc > 0xFFFF)
+                throw new Error("The method "+method_name+" of class "+name+" is too large");
+            try {
+                ByteArrayOutputStream bs = new ByteArrayOutputStream(pc+40);
+                DataOutputStream out = new DataOutputStream(bs);
+                out.writeShort(access);
+                out.writeShort(utf8(method_name));
+                out.writeShort(utf8(method_descriptor));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(pc+12);
+                out.writeShort(max_stack);
+                out.writeShort(max_locals);
+                out.writeInt(pc);
+                out.write(code,0,pc);
+                out.writeShort(0);   // no exception handlers
+                out.writeShort(0);   // no attributes
+                methods.add(bs.toByteArray());
+            } catch (IOException ex) {
+                throw new Error(ex);
+            }
+        }
+    }
+
+    /** the number of methods added to this class so far */
+    int methods () { return methods.size(); }
+
+    /** the contents of the class file */
+    byte[] bytes () {
+        try {
+            int this_class = class_ref(internal_name);
+            int super_class = class_ref(super_name);
+            ByteArrayOutputStream bs = new ByteArrayOutputStream(1000);
+            DataOutputStream out = new DataOutputStream(bs);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(pool_size);
+            out.write(pool_bytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(this_class);
+            out.writeShort(super_class);
+            out.writeShort(0);   // no interfaces
+            out.writeShort(fields_count);
+            fields.flush();
+            out.write(field_bytes.toByteArray());
+            out.writeShort(methods.size());
+            for ( byte[] m: methods )
+                out.write(m);
+            out.writeShort(0);   // no attributes
+            return bs.toByteArray();
+        } catch (IOException ex) {
+            throw new Error(ex);
+        }
+    }
+}
@@ -46,28 +46,57 @@ final public class Config {
     // compile the MR functional arguments to Java bytecode at run-time
     // (each task-tracker repeats the compilation at the MR setup time)
     public static boolean compile_functional_arguments = true;
+    // true, to generate the bytecode of the functional arguments directly without falling back to the Java compiler;
+    // the generated classes are loaded (and verified by the JVM) at compile time (for testing)
+    public static boolean bytecode_only = false;
+    // true, to compile the functional arguments with the Java compiler instead of generating bytecode directly
+    public static boolean javac_only = false;
     // if true, generates info about all compilation and optimization steps
     public static boolean trace = false;
     // number of worker nodes
     public static int nodes = 2;
+    // number of threads used for evaluating plans in memory
+    public static int threads = 1;
     // true, to disable mapJoin
     public static boolean noMapJoin = false;
     // max distributed cache size for MapJoin (fragment-replicate join) in MBs
     public static int mapjoin_size = 50;
+    // if > 0, size the reducers of a MapReduce job from its input: one reducer per that many MBs,
+    // at most one per node (0, the default, always uses one reducer per node)
+    public static int reduce_input_size = 0;
     // max entries for in-mapper combiner before they are flushed out
     public static int map_cache_size = 100000;
     // max number of bag elements to print
     public static int max_bag_size_print = 20;
     // max size of materialized vector before is spilled to a file:
     public static long max_materialized_bag = 500000L;
+    // number of left values joined per scan of a spilled right input in a MapReduce2 reducer
+    public static int join_block_size = 100000;
+    // number of join keys sampled from the left input of a reduce-side join to find its heavy keys;
+    // sampling takes an extra pass over the left input of each join (0, the default, disables it)
+    public static int skew_sample_size = 0;
     // max number of incoming messages before a sub-sync()
     public static int bsp_msg_size = Integer.MAX_VALUE;
     // number of elements per mapper to process the range min...max
     public static long range_split_size = 100000;
     // max number of streams to merge simultaneously
     public static int max_merged_streams = 100;
+    // true, to dump datasets of flat tuples of basic values into columnar files (see ColumnarFile)
+    public static boolean columnar_dump = false;
+    // number of values in a row group of a columnar file
+    public static int row_group_size = 100000;
+    // true, to evaluate closures whose step is x+f(x), for a linear f, on the new values only
+    public static boolean delta_closure = false;
+    // true, to cache the loop-invariant inputs of MapReduce2 joins in loops (Hadoop MapReduce mode only)
+    public static boolean cache_loop_invariants = true;
+    // checkpoint the loop state every that many iterations to truncate its lineage (Spark mode only; 0 means never)
+    public static int checkpoint_interval = 10;
+    // the storage level of the cached loop state (Spark mode only), eg, MEMORY_ONLY_SER, MEMORY_AND_DISK, OFF_HEAP
+    public static String storage_level = "MEMORY_ONLY";
     // the directory for temporary files and spilled bags
     public static String tmpDirectory = "/tmp/mrql_"+System.getProperty("user.name");
+    // the local file that stores the data source statistics (if null, the statistics are not stored)
+    public static String statistics_file = null;
     // true, if we want to derive a combine function for MapReduce
     public static boolean use_combiner = true;
     // true, if we can use the rule that fuses a groupBy with a join over the same key
@@ -96,15 +125,27 @@ final public class Config {
         conf.setBoolean("mrql.flink.mode",flink_mode);
         conf.setBoolean("mrql.interactive",interactive);
         conf.setBoolean("mrql.compile.functional.arguments",compile_functional_arguments);
+        conf.setBoolean("mrql.bytecode.only",bytecode_only);
+        conf.setBoolean("mrql.javac.only",javac_only);
         conf.setBoolean("mrql.trace",trace);
         conf.setInt("mrql.nodes",nodes);
+        conf.setInt("mrql.threads",threads);
         conf.setInt("mrql.mapjoin.size",mapjoin_size);
+        conf.setInt("mrql.reduce.input.size",reduce_input_size);
         conf.setInt("mrql.in.mapper.size",map_cache_size);
         conf.setInt("mrql.max.bag.size.print",max_bag_size_print);
         conf.setLong("mrql.max.materialized.bag",max_materialized_bag);
+        conf.setInt("mrql.join.block.size",join_block_size);
+        conf.setInt("mrql.skew.sample.size",skew_sample_size);
         conf.setInt("mrql.bsp.msg.size",bsp_msg_size);
         conf.setLong("mrql.range.split.size",range_split_size);
         conf.setInt("mrql.max.merged.streams",max_merged_streams);
+        conf.setBoolean("mrql.columnar.dump",columnar_dump);
+        conf.setInt("mrql.row.group.size",row_group_size);
+        conf.setBoolean("mrql.delta.closure",delta_closure);
+        conf.setBoolean("mrql.cache.loop.invariants",cache_loop_invariants);
+        conf.setInt("mrql.checkpoint.interval",checkpoint_interval);
+        conf.set("mrql.storage.level",storage_level);
         conf.set("mrql.tmp.directory",tmpDirectory);
         conf.setBoolean("mrql.use.combiner",use_combiner);
         conf.setBoolean("mrql.group.join.opt",groupJoinOpt);
@@ -127,15 +168,27 @@ final public class Config {
         flink_mode = conf.getBoolean("mrql.flink.mode",flink_mode);
         interactive = conf.getBoolean("mrql.interactive",interactive);
         compile_functional_arguments = conf.getBoolean("mrql.compile.functional.arguments",compile_functional_arguments);
+        bytecode_only = conf.getBoolean("mrql.bytecode.only",bytecode_only);
+        javac_only = conf.getBoolean("mrql.javac.only",javac_only);
         trace = conf.getBoolean("mrql.trace",trace);
         nodes = conf.getInt("mrql.nodes",nodes);
+        threads = conf.getInt("mrql.threads",threads);
         mapjoin_size = conf.getInt("mrql.mapjoin.size",mapjoin_size);
+        reduce_input_size = conf.getInt("mrql.reduce.input.size",reduce_input_size);
         map_cache_size = conf.getInt("mrql.in.mapper.size",map_cache_size);
         max_bag_size_print = conf.getInt("mrql.max.bag.size.print",max_bag_size_print);
         max_materialized_bag = conf.getLong("mrql.max.materialized.bag",max_materialized_bag);
+        join_block_size = conf.getInt("mrql.join.block.size",join_block_size);
+        skew_sample_size = conf.getInt("mrql.skew.sample.size",skew_sample_size);
         bsp_msg_size = conf.getInt("mrql.bsp.msg.size",bsp_msg_size);
         range_split_size = conf.getLong("mrql.range.split.size",range_split_size);
         max_merged_streams = conf.getInt("mrql.max.merged.streams",max_merged_streams);
+        columnar_dump = conf.getBoolean("mrql.columnar.dump",columnar_dump);
+        row_group_size = conf.getInt("mrql.row.group.size",row_group_size);
+        delta_closure = conf.getBoolean("mrql.delta.closure",delta_closure);
+        cache_loop_invariants = conf.getBoolean("mrql.cache.loop.invariants",cache_loop_invariants);
+        checkpoint_interval = conf.getInt("mrql.checkpoint.interval",checkpoint_interval);
+        storage_level = conf.get("mrql.storage.level",storage_level);
         tmpDirectory = conf.get("mrql.tmp.directory");
         use_combiner = conf.getBoolean("mrql.use.combiner",use_combiner);
         groupJoinOpt = conf.getBoolean("mrql.group.join.opt",groupJoinOpt);
@@ -187,6 +240,11 @@ final public class Config {
                     throw new Error("Expected number of nodes > 1");
                 nodes = Integer.parseInt(args[i]);
                 i++;
+            } else if (args[i].equals("-threads")) {
+                if (++i >= args.length || Integer.parseInt(args[i]) < 1)
+                    throw new Error("Expected number of threads >= 1");
+                threads = Integer.parseInt(args[i]);
+                i++;
             } else if (args[i].equals("-bsp_msg_size")) {
                 if (++i >= args.length && Integer.parseInt(args[i]) < 10000)
                     throw new Error("Expected max number of bsp messages before subsync() > 10000");
@@ -197,6 +255,11 @@ final public class Config {
                     throw new Error("Expected number of MBs");
                 mapjoin_size = Integer.parseInt(args[i]);
                 i++;
+            } else if (args[i].equals("-reduce_size")) {
+                if (++i >= args.length)
+                    throw new Error("Expected number of MBs");
+                reduce_input_size = Integer.parseInt(args[i]);
+                i++;
             } else if (args[i].equals("-cache_size")) {
                 if (++i >= args.length)
                     throw new Error("Expected number of entries");
@@ -207,11 +270,26 @@ final public class Config {
                     throw new Error("Expected a temporary directory");
                 tmpDirectory = args[i];
                 i++;
+            } else if (args[i].equals("-stats")) {
+                if (++i >= args.length)
+                    throw new Error("Expected a statistics file");
+                statistics_file = args[i];
+                i++;
             } else if (args[i].equals("-bag_size")) {
                 if (++i >= args.length && Integer.parseInt(args[i]) < 10000)
                     throw new Error("Expected max size of materialized bag > 10000");
                 max_materialized_bag = Long.parseLong(args[i]);
                 i++;
+            } else if (args[i].equals("-join_block")) {
+                if (++i >= args.length)
+                    throw new Error("Expected number of values in a join block");
+                join_block_size = Integer.parseInt(args[i]);
+                i++;
+            } else if (args[i].equals("-skew_sample")) {
+                if (++i >= args.length)
+                    throw new Error("Expected number of sampled join keys");
+                skew_sample_size = Integer.parseInt(args[i]);
+                i++;
             } else if (args[i].equals("-bag_print")) {
                 if (++i >= args.length)
                     throw new Error("Expected number of bag elements to print");
@@ -227,6 +305,30 @@ final public class Config {
                     throw new Error("Expected a max number of merged streams");
                 max_merged_streams = Integer.parseInt(args[i]);
                 i++;
+            } else if (args[i].equals("-columnar")) {
+                columnar_dump = true;
+                i++;
+            } else if (args[i].equals("-row_group")) {
+                if (++i >= args.length || Integer.parseInt(args[i]) < 1)
+                    throw new Error("Expected number of values in a row group >= 1");
+                row_group_size = Integer.parseInt(args[i]);
+                i++;
+            } else if (args[i].equals("-delta")) {
+                delta_closure = true;
+                i++;
+            } else if (args[i].equals("-no_loop_cache")) {
+                cache_loop_invariants = false;
+                i++;
+            } else if (args[i].equals("-checkpoint")) {
+                if (++i >= args.length || Integer.parseInt(args[i]) < 0)
+                    throw new Error("Expected a checkpoint interval >= 0");
+                checkpoint_interval = Integer.parseInt(args[i]);
+                i++;
+            } else if (args[i].equals("-storage")) {
+                if (++i >= args.length)
+                    throw new Error("Expected a storage level");
+                storage_level = args[i].toUpperCase();
+                i++;
             } else if (args[i].equals("-trace")) {
                 trace = true;
                 i++;
@@ -236,6 +338,16 @@ final public class Config {
             } else if (args[i].equals("-NC")) {
                 compile_functional_arguments = false;
                 i++;
+            } else if (args[i].equals("-bytecode")) {
+                compile_functional_arguments = true;
+                bytecode_only = true;
+                javac_only = false;
+                i++;
+            } else if (args[i].equals("-javac")) {
+                compile_functional_arguments = true;
+                javac_only = true;
+                bytecode_only = false;
+                i++;
             } else if (args[i].equals("-P")) {
                 trace_execution = true;
                 i++;
@@ -137,7 +137,7 @@ public class DataSource {
             int n = Integer.parseInt(s[1]);
             Main.initialize();            // the worker node may not have initialized MRQL
             if (s[0].equals("Binary"))
-                return new BinaryDataSource(n,s[2],conf);
+                return new BinaryDataSource(n,s[2],(s.length > 3) ? Tree.parse(s[3]) : null,conf);
             else if (s[0].equals("Generator"))
                 return new GeneratorDataSource(n,s[2],conf);
             else if (s[0].equals("Text"))
@@ -21,11 +21,16 @@ import java.io.*;
 import org.apache.mrql.gen.Tree;
 
 
-/** the run-time environment for in-memory evaluation (binds variables to MRData) */
+/** the run-time environment for in-memory evaluation (binds variables to MRData).
+ *  A frame binds either a single variable (name/value) or a number of variables
+ *  at once (names/values), such as the parameters of a function
+ */
 final public class Environment implements Serializable {
     public String name;
     public MRData value;
     public Environment next;
+    public String[] names;
+    public MRData[] values;
 
     Environment ( String n, MRData v, Environment next ) {
         name = n;
@@ -33,12 +38,22 @@ final public class Environment implements Serializable {
         this.next = next;
     }
 
+    Environment ( String[] ns, MRData[] vs, Environment next ) {
+        names = ns;
+        values = vs;
+        this.next = next;
+    }
+
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
-        name = Tree.add(name);
+        if (name != null)
+            name = Tree.add(name);
+        if (names != null)
+            for ( int i = 0; i < names.length; i++ )
+                names[i] = Tree.add(names[i]);
     }
 }
@@ -20,6 +20,7 @@ package org.apache.mrql;
 import java_cup.runtime.*;
 import org.apache.mrql.gen.*;
 import java.io.*;
+import java.util.Iterator;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
 import org.apache.hadoop.io.*;
@@ -95,22 +96,34 @@ abstract public class Evaluator extends Interpreter {
     final static MRContainer counter_container = new MRContainer(counter_key);
     final static MRContainer value_container = new MRContainer(new MR_int(0));
 
-    /** dump MRQL data into a sequence file */
+    /** the values of a collection; a distributed collection is streamed from its data sources */
+    protected static Iterable<MRData> values ( final MRData data ) {
+        if (data instanceof MR_dataset)
+            return new Iterable<MRData>() {
+                public Iterator<MRData> iterator () {
+                    return new ResultCursor(data);
+                }
+            };
+        return (Bag)data;
+    }
+
+    /** dump MRQL data into a sequence file (or a columnar file, if Config.columnar_dump) */
     public void dump ( String file, Tree type, MRData data ) throws Exception {
         Path path = new Path(file);
         FileSystem fs = path.getFileSystem(Plan.conf);
         PrintStream ftp = new PrintStream(fs.create(path.suffix(".type")));
         ftp.print("2@"+type.toString()+"\n");
         ftp.close();
+        if (columnar_dump(type,data)) {
+            ColumnarFile.write(path,type,values(data),Plan.conf);
+            return;
+        };
         SequenceFile.Writer writer
             = new SequenceFile.Writer(fs,Plan.conf,path,
                                       MRContainer.class,MRContainer.class);
-        if (data instanceof MR_dataset)
-            data = Plan.collect(((MR_dataset)data).dataset());
-        if (data instanceof Bag) {
-            Bag s = (Bag)data;
+        if (data instanceof MR_dataset || data instanceof Bag) {
             long i = 0;
-            for ( MRData e: s ) {
+            for ( MRData e: values(data) ) {
                 counter_key.set(i++);
                 value_container.set(e);
                 writer.append(counter_container,value_container);
@@ -123,6 +136,12 @@ abstract public class Evaluator extends Interpreter {
         writer.close();
     }
 
+    /** is this data dumped into a columnar file? */
+    protected static boolean columnar_dump ( Tree type, MRData data ) {
+        return Config.columnar_dump && (data instanceof MR_dataset || data instanceof Bag)
+            && BagColumns.column_types(type) != null;
+    }
+
     /** dump MRQL data into a text CVS file */
     public void dump_text ( String file, Tree type, MRData data ) throws Exception {
 	int ps = Config.max_bag_size_print;
@@ -130,20 +149,18 @@ abstract public class Evaluator extends Interpreter {
 	final PrintStream out = (Config.hadoop_mode)
 	                         ? Plan.print_stream(file)
 	                         : new PrintStream(file);
-	if (data instanceof MR_dataset)
-	    data = Plan.collect(((MR_dataset)data).dataset());
 	if (Translator.collection_type(type)) {
 	    Tree tp = ((Node)type).children().head();
 	    if (tp instanceof Node && ((Node)tp).name().equals("tuple")) {
 		Trees ts = ((Node)tp).children();
-		for ( MRData x: (Bag)data ) {
+		for ( MRData x: values(data) ) {
 		    Tuple t = (Tuple)x;
 		    out.print(print(t.get((short)0),ts.nth(0)));
 		    for ( short i = 1; i < t.size(); i++ )
 			out.print(","+print(t.get(i),ts.nth(i)));
 		    out.println();
 		}
-	    } else for ( MRData x: (Bag)data )
+	    } else for ( MRData x: values(data) )
 		       out.println(print(x,tp));
 	} else out.println(print(data,query_type));
 	Config.max_bag_size_print = ps;
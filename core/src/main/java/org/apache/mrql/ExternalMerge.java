@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.*;
+import java.util.List;
+import java.util.ArrayList;
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.io.*;
+import org.apache.hadoop.conf.Configuration;
+
+
+/** A k-way merge of sorted runs of (key,value) pairs that uses a loser tree over the serialized keys.
+ *  If there are more than Config.max_merged_streams runs, groups of runs are first merged
+ *  into temporary sequence files, so that at most max_merged_streams runs are open at any time */
+final class ExternalMerge {
+    final Run[] runs;
+    final int k;
+    // tree[0] is the winner run; tree[i], for 0<i<k, is the loser run of the internal node i
+    final int[] tree;
+    final boolean[] done;
+    final int[] container_size = new int[1];
+
+    /** a sorted run of (key,value) pairs */
+    static abstract class Run {
+        // the serialized key of the current pair
+        final DataOutputBuffer key = new DataOutputBuffer();
+
+        /** read the next pair (the first call opens the run); return false at the end of the run */
+        abstract boolean next () throws IOException;
+
+        /** the value of the current pair */
+        abstract MRData value () throws IOException;
+
+        /** append the current pair to a sequence file */
+        abstract void append ( SequenceFile.Writer writer ) throws IOException;
+
+        abstract void close () throws IOException;
+    }
+
+    /** uncompressed serialized values of sequence files */
+    private static final class RawValue implements SequenceFile.ValueBytes {
+        final DataOutputBuffer buffer = new DataOutputBuffer();
+
+        public void writeUncompressedBytes ( DataOutputStream out ) throws IOException {
+            out.write(buffer.getData(),0,buffer.getLength());
+        }
+
+        public void writeCompressedBytes ( DataOutputStream out ) throws IOException {
+            throw new IllegalArgumentException("Cannot write compressed bytes");
+        }
+
+        public int getSize () { return buffer.getLength(); }
+    }
+
+    /** a run stored in a sequence file of MRContainer pairs (the values are never deserialized
+     *  unless they are returned by the final merge) */
+    static final class SequenceRun extends Run {
+        final FileSystem fs;
+        final Path path;
+        final Configuration conf;
+        final boolean temporary;
+        final RawValue value = new RawValue();
+        final DataInputBuffer input = new DataInputBuffer();
+        SequenceFile.Reader reader;
+        SequenceFile.ValueBytes raw_value;
+        // the pair of a record-compressed file, which is read deserialized
+        MRContainer record_key, record_value;
+
+        SequenceRun ( FileSystem fs, Path path, Configuration conf, boolean temporary ) {
+            this.fs = fs;
+            this.path = path;
+            this.conf = conf;
+            this.temporary = temporary;
+        }
+
+        boolean next () throws IOException {
+            if (reader == null) {
+                reader = new SequenceFile.Reader(fs,path,conf);
+                if (reader.isCompressed() && !reader.isBlockCompressed()) {
+                    // the raw values of record-compressed files cannot be uncompressed: read the pairs instead
+                    record_key = new MRContainer();
+                    record_value = new MRContainer();
+                } else raw_value = reader.createValueBytes();
+            };
+            key.reset();
+            value.buffer.reset();
+            if (record_key != null) {
+                if (!reader.next(record_key,record_value))
+                    return false;
+                record_key.write(key);
+                record_value.write(value.buffer);
+                return true;
+            };
+            if (reader.nextRaw(key,raw_value) < 0)
+                return false;
+            raw_value.writeUncompressedBytes(value.buffer);
+            return true;
+        }
+
+        MRData value () throws IOException {
+            input.reset(value.buffer.getData(),value.buffer.getLength());
+            return MRContainer.read(input);
+        }
+
+        void append ( SequenceFile.Writer writer ) throws IOException {
+            writer.appendRaw(key.getData(),0,key.getLength(),value);
+        }
+
+        void close () throws IOException {
+            if (reader != null)
+                reader.close();
+            if (temporary)
+                fs.delete(path,true);
+        }
+    }
+
+    private ExternalMerge ( Run[] runs ) throws IOException {
+        this.runs = runs;
+        k = runs.length;
+        tree = new int[Math.max(k,1)];
+        done = new boolean[k];
+        for ( int i = 0; i < k; i++ )
+            if (!runs[i].next()) {
+                done[i] = true;
+                runs[i].close();
+            };
+        if (k > 0)
+            tree[0] = build(1);
+    }
+
+    /** is the current pair of the run i before that of the run j? (exhausted runs come last) */
+    private boolean before ( int i, int j ) {
+        if (done[i])
+            return false;
+        if (done[j])
+            return true;
+        DataOutputBuffer x = runs[i].key;
+        DataOutputBuffer y = runs[j].key;
+        int c = MRContainer.compare(x.getData(),0,x.getLength(),y.getData(),0,y.getLength(),container_size);
+        return c < 0 || (c == 0 && i < j);
+    }
+
+    /** play the tournament of the subtree rooted at node; the leaf k+i is the run i */
+    private int build ( int node ) {
+        if (node >= k)
+            return node-k;
+        int left = build(2*node);
+        int right = build(2*node+1);
+        if (before(left,right)) {
+            tree[node] = right;
+            return left;
+        };
+        tree[node] = left;
+        return right;
+    }
+
+    private boolean hasNext () {
+        return k > 0 && !done[tree[0]];
+    }
+
+    private Run current () {
+        return runs[tree[0]];
+    }
+
+    /** advance the winner run and replay the matches on the path from its leaf to the root */
+    private void advance () throws IOException {
+        int winner = tree[0];
+        if (!runs[winner].next()) {
+            done[winner] = true;
+            runs[winner].close();
+        };
+        for ( int node = (winner+k)/2; node > 0; node /= 2 )
+            if (before(tree[node],winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            };
+        tree[0] = winner;
+    }
+
+    /** merge the sorted runs and return the values ordered by their keys */
+    static Bag merge ( List<? extends Run> runs, Configuration conf ) throws IOException {
+        int fan_in = Math.max(2,Config.max_merged_streams);
+        List<? extends Run> rs = runs;
+        while (rs.size() > fan_in) {
+            if (Config.trace)
+                System.out.println("Merging "+rs.size()+" sorted runs");
+            ArrayList<Run> next = new ArrayList<Run>();
+            for ( int i = 0; i < rs.size(); i += fan_in ) {
+                List<? extends Run> group = rs.subList(i,Math.min(i+fan_in,rs.size()));
+                if (group.size() == 1) {
+                    next.add(group.get(0));
+                    continue;
+                };
+                Path path = new Path(Plan.new_path(conf));
+                FileSystem fs = path.getFileSystem(conf);
+                SequenceFile.Writer writer
+                    = SequenceFile.createWriter(fs,conf,path,MRContainer.class,MRContainer.class,
+                                                SequenceFile.CompressionType.NONE);
+                ExternalMerge m = new ExternalMerge(group.toArray(new Run[group.size()]));
+                for ( ; m.hasNext(); m.advance() )
+                    m.current().append(writer);
+                writer.close();
+                next.add(new SequenceRun(fs,path,conf,true));
+            };
+            rs = next;
+        };
+        final ExternalMerge m = new ExternalMerge(rs.toArray(new Run[rs.size()]));
+        return new Bag(new BagIterator () {
+                public boolean hasNext () {
+                    return m.hasNext();
+                }
+                public MRData next () {
+                    try {
+                        MRData value = m.current().value();
+                        m.advance();
+                        return value;
+                    } catch (IOException e) {
+                        throw new Error("Cannot merge values from an intermediate result: "+e);
+                    }
+                }
+            });
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.util.Arrays;
+
+
+/** A hash index of the (key,value) pairs of the small input of a map-side join.
+ *  The pairs are stored in parallel arrays and the pairs of a hash bucket are chained
+ *  through entry numbers, so there is no object per pair or per key. Once built,
+ *  the index is read-only and can be probed by many tasks at the same time */
+final public class JoinIndex {
+    private MRData[] keys;
+    private MRData[] values;
+    private int[] hashes;
+    private int size = 0;
+    private int[] next;      // the next entry in the same bucket (-1 at the end)
+    private int[] buckets;   // the first entry of each bucket (-1 if empty)
+    private int mask;
+
+    public JoinIndex ( int capacity ) {
+        int n = Math.max(capacity,16);
+        keys = new MRData[n];
+        values = new MRData[n];
+        hashes = new int[n];
+    }
+
+    private static int hash ( MRData key ) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** insert a (key,value) pair into the index (before build) */
+    public void add ( MRData key, MRData value ) {
+        if (buckets != null)
+            throw new Error("Cannot insert into a join index that has been built");
+        if (size == keys.length) {
+            int n = 2*size;
+            keys = Arrays.copyOf(keys,n);
+            values = Arrays.copyOf(values,n);
+            hashes = Arrays.copyOf(hashes,n);
+        };
+        keys[size] = key;
+        values[size] = value;
+        hashes[size] = hash(key);
+        size++;
+    }
+
+    /** build the hash buckets; the values of a key are chained in insertion order */
+    public JoinIndex build () {
+        int n = 16;
+        while (n < 2*size)
+            n <<= 1;
+        mask = n-1;
+        buckets = new int[n];
+        Arrays.fill(buckets,-1);
+        next = new int[size];
+        for ( int e = size-1; e >= 0; e-- ) {
+            int b = hashes[e] & mask;
+            next[e] = buckets[b];
+            buckets[b] = e;
+        };
+        return this;
+    }
+
+    /** the number of (key,value) pairs in the index */
+    public int size () { return size; }
+
+    /** return the values of a key (null if the key is not in the index) */
+    public Bag get ( MRData key ) {
+        int h = hash(key);
+        Bag s = null;
+        for ( int e = buckets[h & mask]; e >= 0; e = next[e] )
+            if (hashes[e] == h && keys[e].equals(key)) {
+                if (s == null)
+                    s = new Bag();
+                s.add(values[e]);
+            };
+        return s;
+    }
+}
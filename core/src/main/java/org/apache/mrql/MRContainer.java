@@ -19,6 +19,7 @@ package org.apache.mrql;
 
 import java.io.*;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableUtils;
 
 
 /** A container for MRData that implements read (the deserializer) */
@@ -119,6 +120,196 @@ public class MRContainer implements WritableComparable<MRContainer>, Serializabl
         throw new Error("Unrecognized MRQL type tag: "+x[xs]);
     }
 
+    private static void copy_vint ( DataInput in, DataOutput out ) throws IOException {
+        byte b = in.readByte();
+        out.writeByte(b);
+        for ( int i = WritableUtils.decodeVIntSize(b); i > 1; i-- )
+            out.writeByte(in.readByte());
+    }
+
+    private static void copy_bytes ( DataInput in, DataOutput out, int n ) throws IOException {
+        for ( int i = 0; i < n; i++ )
+            out.writeByte(in.readByte());
+    }
+
+    /** Copy a serialized MRData from in to out without deserializing the data */
+    final public static void copy ( DataInput in, DataOutput out ) throws IOException {
+        final byte tag = in.readByte();
+        out.writeByte(tag);
+        copy_value(tag,in,out);
+    }
+
+    /** copy the value of a serialized MRData whose tag has already been copied */
+    private static void copy_value ( byte tag, DataInput in, DataOutput out ) throws IOException {
+        int n;
+        switch (tag) {
+        case TUPLE: case BAG:
+            n = WritableUtils.readVInt(in);
+            WritableUtils.writeVInt(out,n);
+            for ( int i = 0; i < n; i++ )
+                copy(in,out);
+            return;
+        case PAIR:
+            copy(in,out);
+            copy(in,out);
+            return;
+        case TRIPLE:
+            copy(in,out);
+            copy(in,out);
+            copy(in,out);
+            return;
+        case LAZY_BAG:
+            for ( byte b = in.readByte(); b != END_OF_LAZY_BAG; b = in.readByte() ) {
+                out.writeByte(b);
+                copy_value(b,in,out);
+            };
+            out.writeByte(END_OF_LAZY_BAG);
+            return;
+        case UNION:
+            out.writeByte(in.readByte());
+            copy(in,out);
+            return;
+        case INV:
+            copy(in,out);
+            return;
+        case BOOLEAN: case BYTE:
+            copy_bytes(in,out,1);
+            return;
+        case SHORT: case CHAR:
+            copy_bytes(in,out,2);
+            return;
+        case FLOAT:
+            copy_bytes(in,out,4);
+            return;
+        case DOUBLE:
+            copy_bytes(in,out,8);
+            return;
+        case INT: case LONG:
+            copy_vint(in,out);
+            return;
+        case STRING:
+            n = WritableUtils.readVInt(in);
+            WritableUtils.writeVInt(out,n);
+            copy_bytes(in,out,n);
+            return;
+        case NULL: case END_OF_LAZY_BAG: case SYNC: case MORE_BSP_STEPS:
+            return;
+        };
+        throw new Error("Unrecognized MRQL type tag: "+tag);
+    }
+
+    /** combine the hash code h with the value v (the mixing step of MurmurHash3) */
+    private static int mix ( int h, int v ) {
+        v *= 0xcc9e2d51;
+        v = Integer.rotateLeft(v,15);
+        v *= 0x1b873593;
+        h ^= v;
+        h = Integer.rotateLeft(h,13);
+        return h*5+0xe6546b64;
+    }
+
+    private static int mix ( int h, long v ) {
+        return mix(mix(h,(int)v),(int)(v >>> 32));
+    }
+
+    /** the final avalanche step of MurmurHash3 */
+    private static int avalanche ( int h ) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** A hash code of MRData that is consistent with equals and depends only on the values
+     *  of the data (as they are serialized), not on their Java representation */
+    final public static int hash ( MRData x ) {
+        return avalanche(data_hash(x));
+    }
+
+    private static int data_hash ( MRData x ) {
+        if (x instanceof Tuple) {
+            final Tuple t = (Tuple)x;
+            final int n = t.size();
+            int h = (n == 0) ? NULL : (n == 2) ? PAIR : (n == 3) ? TRIPLE : TUPLE;
+            for ( int i = 0; i < n; i++ )
+                h = mix(h,data_hash(t.get(i)));
+            return h;
+        } else if (x instanceof MR_int)
+            return mix(INT,((MR_int)x).get());
+        else if (x instanceof MR_long)
+            return mix(LONG,((MR_long)x).get());
+        else if (x instanceof MR_string)
+            return mix(STRING,((MR_string)x).utf8_hash());
+        else if (x instanceof MR_double)
+            return mix(DOUBLE,double_bits(((MR_double)x).get()));
+        else if (x instanceof Bag) {
+            int h = BAG;
+            for ( MRData e: (Bag)x )
+                h = mix(h,data_hash(e));
+            return h;
+        } else if (x instanceof Union)
+            return mix(mix(UNION,(int)((Union)x).tag()),data_hash(((Union)x).value()));
+        else if (x instanceof MR_bool)
+            return mix(BOOLEAN,((MR_bool)x).get() ? 1 : 0);
+        else if (x instanceof MR_byte)
+            return mix(BYTE,(int)((MR_byte)x).get());
+        else if (x instanceof MR_short)
+            return mix(SHORT,(int)((MR_short)x).get());
+        else if (x instanceof MR_float)
+            return mix(FLOAT,float_bits(((MR_float)x).get()));
+        else if (x instanceof MR_char)
+            return mix(CHAR,(int)((MR_char)x).get());
+        else if (x instanceof Inv)
+            return mix(INV,data_hash(((Inv)x).value()));
+        else if (x instanceof MR_sync)
+            return SYNC;
+        else if (x instanceof MR_more_bsp_steps)
+            return MORE_BSP_STEPS;
+        // other data (lambdas, datasets, variables, etc) use their own hash code
+        return x.hashCode();
+    }
+
+    /** the hash of the UTF-8 encoding of a string (as written by Text.writeString) */
+    static int utf8_hash ( String s ) {
+        int h = 0;
+        final int n = s.length();
+        for ( int i = 0; i < n; i++ ) {
+            final char c = s.charAt(i);
+            if (c < 0x80)
+                h = 31*h+c;
+            else if (c < 0x800) {
+                h = 31*h+(byte)(0xc0 | (c >> 6));
+                h = 31*h+(byte)(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i+1 < n
+                       && Character.isLowSurrogate(s.charAt(i+1))) {
+                final int cp = Character.toCodePoint(c,s.charAt(++i));
+                h = 31*h+(byte)(0xf0 | (cp >> 18));
+                h = 31*h+(byte)(0x80 | ((cp >> 12) & 0x3f));
+                h = 31*h+(byte)(0x80 | ((cp >> 6) & 0x3f));
+                h = 31*h+(byte)(0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c))
+                h = 31*h+'?';    // malformed input is replaced by the encoder
+            else {
+                h = 31*h+(byte)(0xe0 | (c >> 12));
+                h = 31*h+(byte)(0x80 | ((c >> 6) & 0x3f));
+                h = 31*h+(byte)(0x80 | (c & 0x3f));
+            }
+        };
+        return h;
+    }
+
+    /** the bits of a float, where 0.0 and -0.0 are equal */
+    private static int float_bits ( float f ) {
+        return (f == 0.0f) ? 0 : Float.floatToIntBits(f);
+    }
+
+    /** the bits of a double, where 0.0 and -0.0 are equal */
+    private static long double_bits ( double d ) {
+        return (d == 0.0) ? 0L : Double.doubleToLongBits(d);
+    }
+
     private void writeObject ( ObjectOutputStream out ) throws IOException {
         data.write(out);
     }
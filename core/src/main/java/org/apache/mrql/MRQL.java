@@ -17,10 +17,12 @@
  */
 package org.apache.mrql;
 
+import org.apache.mrql.gen.Tree;
 import java.io.*;
 
 
-/** API for dynamic MRQL queries */
+/** API for dynamic MRQL queries over a single global workspace
+ *  (see Session for isolated workspaces; queries from all workspaces are evaluated one at a time) */
 final public class MRQL extends Interpreter {
 
     /** evaluate an MRQL query in a string
@@ -28,14 +30,38 @@ final public class MRQL extends Interpreter {
      * @return the evaluation result
      */
     public static MRData query ( String query ) {
-        evaluate("store tt := "+query+";");
-        return variable_lookup("tt",global_env);
+        Session.lock.lock();
+        try {
+            evaluate("store tt := "+query+";");
+            return variable_lookup("tt",global_env);
+        } finally {
+            Session.lock.unlock();
+        }
+    }
+
+    /** evaluate an MRQL query in a string without collecting its result
+     * @param query a string that contains an MRQL query
+     * @return a cursor that reads the query result in batches
+     */
+    public static ResultCursor cursor ( String query ) {
+        Session.lock.lock();
+        try {
+            Tree e = Session.parse_query(query);
+            reset();
+            MRData res = TopLevel.expression(e,false);
+            if (res == null)
+                throw new Error("Cannot evaluate the MRQL query: "+query);
+            return new ResultCursor(res);
+        } finally {
+            Session.lock.unlock();
+        }
     }
 
     /** evaluate MRQL statments in a string
      * @param command a string that contains MRQL commands separated by ;
      */
     public static void evaluate ( String command ) {
+        Session.lock.lock();
         try {
             MRQLLex scanner = new MRQLLex(new StringReader(command));
             MRQLParser parser = new MRQLParser(scanner);
@@ -45,9 +71,16 @@ final public class MRQL extends Interpreter {
         } catch (Exception x) {
             x.printStackTrace();
             throw new Error(x);
+        } finally {
+            Session.lock.unlock();
         }
     }
 
+    /** the number of cached query plans and the hits and misses of the plan cache */
+    public static String plan_cache_statistics () {
+        return PlanCache.statistics();
+    }
+
     /** clean up the MRQL workspace */
     public static void clean () {
         try {
@@ -24,36 +24,139 @@ import org.apache.hadoop.io.*;
 import org.apache.hadoop.fs.*;
 
 
-/** a container for strings */
+/** a container for strings. A string read from a binary stream keeps its UTF-8 encoding
+ *  and is decoded on demand, so that strings that are only compared, hashed, and written
+ *  (such as group-by and join keys) are never decoded */
 final public class MR_string extends MRData {
-    private String value;
+    /** the UTF-8 encoding of a string; its bytes and length are published together */
+    private final static class UTF8 {
+        final byte[] bytes;
+        final int length;
+
+        UTF8 ( byte[] bytes, int length ) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    private volatile String value;   // the decoded string (null if not decoded yet; a racing decoding is harmless)
+    private volatile UTF8 utf8;      // the UTF-8 encoding of the string (null if not known)
 
     public MR_string () {}
 
     public MR_string ( String s ) { value = s; }
 
+    MR_string ( byte[] bytes, int length ) {
+        utf8 = new UTF8(bytes,length);
+    }
+
     public void materializeAll () {};
 
-    public String get () { return value; }
+    public String get () {
+        UTF8 u = utf8;
+        if (value == null && u != null)
+            try {
+                value = Text.decode(u.bytes,0,u.length);
+            } catch (IOException e) {
+                throw new Error(e);
+            };
+        return value;
+    }
 
-    public void set ( String v ) { value = v; }
+    public void set ( String v ) {
+        value = v;
+        utf8 = null;
+    }
 
     final public void write ( DataOutput out ) throws IOException {
         out.writeByte(MRContainer.STRING);
-        Text.writeString(out,value);
+        UTF8 u = utf8;
+        if (u == null)
+            Text.writeString(out,value);
+        else {
+            WritableUtils.writeVInt(out,u.length);
+            out.write(u.bytes,0,u.length);
+        }
     }
 
     final public static MR_string read ( DataInput in ) throws IOException {
-        return new MR_string(Text.readString(in));
+        int n = WritableUtils.readVInt(in);
+        byte[] b = new byte[n];
+        in.readFully(b,0,n);
+        return new MR_string(b,n);
     }
 
     public void readFields ( DataInput in ) throws IOException {
-        value = Text.readString(in);
+        value = null;
+        int n = WritableUtils.readVInt(in);
+        byte[] b = new byte[n];
+        in.readFully(b,0,n);
+        utf8 = new UTF8(b,n);
+    }
+
+    /** the UTF-8 encoding of the string (encoded on first use; a racing encoding is harmless) */
+    private UTF8 encode () {
+        UTF8 u = utf8;
+        if (u == null) {
+            try {
+                java.nio.ByteBuffer b = Text.encode(value);
+                u = new UTF8(b.array(),b.limit());
+            } catch (IOException e) {
+                throw new Error(e);
+            };
+            utf8 = u;
+        };
+        return u;
+    }
+
+    /** the UTF-8 encoding of the string (only the first utf8_length() bytes are used);
+     *  the returned array must not be modified */
+    public byte[] utf8_bytes () {
+        return encode().bytes;
+    }
+
+    /** the length of the UTF-8 encoding of the string */
+    public int utf8_length () {
+        return encode().length;
+    }
+
+    /** the hash of the UTF-8 encoding of the string (see MRContainer.hash) */
+    final int utf8_hash () {
+        UTF8 u = utf8;
+        if (u == null)
+            return MRContainer.utf8_hash(value);
+        int h = 0;
+        for ( int i = 0; i < u.length; i++ )
+            h = 31*h+u.bytes[i];
+        return h;
+    }
+
+    /** compare by unicode code points, which is the order of the UTF-8 encodings */
+    static int compare_code_points ( String x, String y ) {
+        int i = 0, j = 0;
+        while (i < x.length() && j < y.length()) {
+            int cx = x.codePointAt(i);
+            int cy = y.codePointAt(j);
+            if (cx != cy)
+                return cx-cy;
+            i += Character.charCount(cx);
+            j += Character.charCount(cy);
+        };
+        return (x.length()-i)-(y.length()-j);
     }
 
     public int compareTo ( MRData x ) {
         assert(x instanceof MR_string);
-        return value.compareTo(((MR_string) x).value);
+        MR_string s = (MR_string) x;
+        UTF8 u = utf8;
+        UTF8 su = s.utf8;
+        if (u == null && su == null)
+            return compare_code_points(value,s.value);
+        if (u == null)
+            u = encode();
+        if (su == null)
+            su = s.encode();
+        return WritableComparator.compareBytes(u.bytes,0,u.length,su.bytes,0,su.length);
     }
 
     final static Text.Comparator comparator = new Text.Comparator();
@@ -68,12 +171,19 @@ final public class MR_string extends MRData {
     }
 
     public boolean equals ( Object x ) {
-        return x instanceof MR_string && value.equals(((MR_string) x).value);
+        if (!(x instanceof MR_string))
+            return false;
+        MR_string s = (MR_string) x;
+        UTF8 u = utf8;
+        UTF8 su = s.utf8;
+        if (u != null && su != null)
+            return WritableComparator.compareBytes(u.bytes,0,u.length,su.bytes,0,su.length) == 0;
+        return get().equals(s.get());
     }
 
-    public int hashCode () { return value.hashCode(); }
+    public int hashCode () { return utf8_hash(); }
 
     public String toString () {
-        return "\""+value+"\"";
+        return "\""+get()+"\"";
     }
 }
@@ -39,6 +39,10 @@ final public class MapReduceAlgebra {
      * @return a value of type {b}
      */
     public static Bag cmap ( final Function f, final Bag s ) {
+        if (ParallelAlgebra.parallel(s))
+            return ParallelAlgebra.cmap(f,s);
+        if (f instanceof BatchFunction)
+            return cmap((BatchFunction)f,s);
         final Iterator<MRData> si = s.iterator();
         return new Bag(new BagIterator() {
                 Iterator<MRData> data = null;
@@ -68,6 +72,40 @@ final public class MapReduceAlgebra {
             });
     }
 
+    // the number of values passed to a BatchFunction at once
+    final static int batch_size = 256;
+
+    /** lazy concat-map that evaluates the function over batches of values
+     * @param f a function from a to {b}
+     * @param s the input of type {a}
+     * @return a value of type {b}
+     */
+    public static Bag cmap ( final BatchFunction f, final Bag s ) {
+        final Iterator<MRData> si = s.iterator();
+        return new Bag(new BagIterator() {
+                final MRData[] batch = new MRData[batch_size];
+                final ArrayList<MRData> out = new ArrayList<MRData>(batch_size);
+                int position = 0;
+                public boolean hasNext () {
+                    while (position >= out.size()) {
+                        if (!si.hasNext())
+                            return false;
+                        int n = 0;
+                        while (n < batch_size && si.hasNext())
+                            batch[n++] = si.next();
+                        out.clear();
+                        position = 0;
+                        f.eval(batch,n,out);
+                        Arrays.fill(batch,0,n,null);
+                    };
+                    return true;
+                }
+                public MRData next () {
+                    return out.get(position++);
+                }
+            });
+    }
+
     /** lazy map
      * @param f a function from a to b
      * @param s the input of type {a}
@@ -134,6 +172,106 @@ final public class MapReduceAlgebra {
         return res;
     }
 
+    /** number of spilled partitions created when the hash table of hashGroupBy overflows */
+    private final static int hash_group_partitions = 16;
+
+    /** max number of recursive partitionings before hashGroupBy falls back to sorting */
+    private final static int max_hash_group_depth = 3;
+
+    /** strict group-by that uses sorting only if the result needs to be ordered
+     * @param s the input of type {(a,b)}
+     * @param orderp does the result need to be ordered by the group-by key?
+     * @return a value of type {(a,{b})}
+     */
+    public static Bag groupBy ( Bag s, boolean orderp ) {
+        return (orderp) ? groupBy(s) : hashGroupBy(s);
+    }
+
+    /** strict hash-based group-by (the result is not ordered).
+     * The groups are kept in a hash table. In hadoop mode, when the hash table holds more
+     * than Config.max_materialized_bag values, the hash table and the rest of the input
+     * are hash-partitioned into spilled Bags and each partition is grouped recursively
+     * @param s the input of type {(a,b)}
+     * @return a value of type {(a,{b})}
+     */
+    public static Bag hashGroupBy ( Bag s ) {
+        return hashGroupBy(s.iterator(),0);
+    }
+
+    private static Bag hashGroupBy ( final Iterator<MRData> it, final int level ) {
+        final HashMap<MRData,Bag> table = new HashMap<MRData,Bag>(1000);
+        long count = 0;
+        while (it.hasNext()) {
+            final Tuple p = (Tuple)it.next();
+            Bag group = table.get(p.first());
+            if (group == null) {
+                group = new Bag();
+                table.put(p.first(),group);
+            };
+            group.add(p.second());
+            if (++count >= Config.max_materialized_bag && Config.hadoop_mode)
+                return partitioned_groupBy(table,it,level);
+        };
+        Bag res = new Bag(table.size());
+        for ( Map.Entry<MRData,Bag> entry: table.entrySet() ) {
+            Bag group = entry.getValue();
+            group.trim();
+            res.add(new Tuple(entry.getKey(),group));
+        };
+        return res;
+    }
+
+    /** the spilled partition of a group-by key at a recursion level */
+    private static int hash_partition ( final MRData key, final int level ) {
+        int h = key.hashCode() ^ (level * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return (h & Integer.MAX_VALUE) % hash_group_partitions;
+    }
+
+    /** flush an overflowed hash table and the rest of the input into spilled partitions
+     *  and group each partition separately */
+    private static Bag partitioned_groupBy ( final Map<MRData,Bag> table,
+                                             final Iterator<MRData> it,
+                                             final int level ) {
+        if (level >= max_hash_group_depth) {
+            // the partitions do not shrink (a few keys have too many values): use external sorting
+            Bag s = new Bag();
+            for ( Map.Entry<MRData,Bag> entry: table.entrySet() )
+                for ( MRData v: entry.getValue() )
+                    s.add(new Tuple(entry.getKey(),v));
+            table.clear();
+            while (it.hasNext())
+                s.add(it.next());
+            return groupBy(s);
+        };
+        if (!Config.testing)
+            System.err.println("*** Partitioning a hash group-by into "+hash_group_partitions
+                               +" spilled partitions (level "+level+")");
+        final Bag[] partitions = new Bag[hash_group_partitions];
+        for ( int i = 0; i < hash_group_partitions; i++ ) {
+            partitions[i] = new Bag();
+            partitions[i].spill();
+        };
+        for ( Map.Entry<MRData,Bag> entry: table.entrySet() ) {
+            Bag partition = partitions[hash_partition(entry.getKey(),level)];
+            for ( MRData v: entry.getValue() )
+                partition.add(new Tuple(entry.getKey(),v));
+        };
+        table.clear();
+        while (it.hasNext()) {
+            final Tuple p = (Tuple)it.next();
+            partitions[hash_partition(p.first(),level)].add(p);
+        };
+        Bag res = new Bag();
+        for ( int i = 0; i < hash_group_partitions; i++ ) {
+            res.addAll(hashGroupBy(partitions[i].iterator(),level+1));
+            partitions[i] = null;
+        };
+        return res;
+    }
+
     /** lazy group-by (not used) */
     private static Bag groupBy_lazy ( Bag s ) {
         s.sort();
@@ -181,7 +319,20 @@ final public class MapReduceAlgebra {
      * @return a value of type {c}
      */
     public static Bag mapReduce ( final Function m, final Function r, final Bag s ) {
-        return cmap(r,groupBy(cmap(m,s)));
+        return mapReduce(m,r,s,true);
+    }
+
+    /** the MapReduce operation that sorts the map output only if the result needs to be ordered
+     * @param m a map function from a to {(k,b)}
+     * @param r a reduce function from (k,{b}) to {c}
+     * @param s the input of type {a}
+     * @param orderp does the result need to be ordered?
+     * @return a value of type {c}
+     */
+    public static Bag mapReduce ( final Function m, final Function r, final Bag s, final boolean orderp ) {
+        if (ParallelAlgebra.parallel_strict(s))
+            return ParallelAlgebra.mapReduce(new Function[]{ m },r,new Bag[]{ s },orderp);
+        return cmap(r,groupBy(cmap(m,s),orderp));
     }
 
     /** Not used: use mapReduce2 instead */
@@ -243,6 +394,8 @@ final public class MapReduceAlgebra {
      */
     public static Bag crossProduct ( final Function mx, final Function my, final Function r,
                                      final Bag X, final Bag Y ) {
+        if (ParallelAlgebra.parallel_strict(X))
+            return ParallelAlgebra.crossProduct(mx,my,r,X,Y);
         Bag a = new Bag();
         for ( MRData y: Y )
             for ( MRData v: (Bag)my.eval(y) )
@@ -268,26 +421,28 @@ final public class MapReduceAlgebra {
                                    final Function my,   // right mapper
                                    final Function r,    // reducer
                                    final Bag X, final Bag Y ) {
-        final Bag left = cmap(new Function() {
-                public Bag eval ( final MRData x ) {
-                    return cmap(new Function() {
-                            public Bag eval ( final MRData e ) {
-                                final Tuple p = (Tuple)e;
-                                return new Bag(new Tuple(p.first(),
-                                                         new Tuple(new MR_byte(1),p.second())));
-                            } }, (Bag)mx.eval(x));
-                } }, X);
-        final Bag right = cmap(new Function() {
-                public Bag eval ( final MRData y ) {
-                    return cmap(new Function() {
-                            public Bag eval ( final MRData e ) {
-                                final Tuple p = (Tuple)e;
-                                return new Bag(new Tuple(p.first(),
-                                                         new Tuple(new MR_byte(2),p.second())));
-                            } }, (Bag)my.eval(y));
-                } }, Y);
-        final Iterator<MRData> li = left.iterator();
-        final Iterator<MRData> ri = right.iterator();
+        return mapReduce2(mx,my,r,X,Y,true);
+    }
+
+    /** A map-reduce operation with two mappers (a join)
+     * @param mx left map function from a to {(k,a')}
+     * @param my right key function from b to {(k,b')}
+     * @param r reducer from ({a'},{b'}) to {c}
+     * @param X left input of type {a}
+     * @param Y right input of type {b}
+     * @param orderp does the result need to be ordered?
+     * @return a value of type {c}
+     */
+    public static Bag mapReduce2 ( final Function mx,   // left mapper
+                                   final Function my,   // right mapper
+                                   final Function r,    // reducer
+                                   final Bag X, final Bag Y,
+                                   final boolean orderp ) {
+        if (ParallelAlgebra.parallel_strict(X,Y))
+            return ParallelAlgebra.mapReduce(new Function[]{ tagged_mapper(mx,(byte)1), tagged_mapper(my,(byte)2) },
+                                             join_reducer(r),new Bag[]{ X, Y },orderp);
+        final Iterator<MRData> li = cmap(tagged_mapper(mx,(byte)1),X).iterator();
+        final Iterator<MRData> ri = cmap(tagged_mapper(my,(byte)2),Y).iterator();
         final Bag mix = new Bag(new BagIterator () {
                 MRData data;
                 public boolean hasNext () {
@@ -303,27 +458,52 @@ final public class MapReduceAlgebra {
                     return data;
                 }
             });
-        return cmap(new Function() {
-                public Bag eval ( final MRData e ) {
-                    final Tuple p = (Tuple)e;
-                    final Bag xs = cmap(new Function() {
-                            public Bag eval ( final MRData e ) {
-                                final Tuple q = (Tuple)e;
-                                return (((MR_byte)q.first()).get() == 1)
-                                        ? new Bag(q.second())
-                                        : new Bag();
-                            } }, (Bag)p.second());
-                    final Bag ys = cmap(new Function() {
-                            public Bag eval ( final MRData e ) {
-                                final Tuple q = (Tuple)e;
-                                return (((MR_byte)q.first()).get() == 2)
-                                        ? new Bag(q.second())
-                                        : new Bag();
-                            } }, (Bag)p.second());
-                    xs.materialize();
-                    ys.materialize();
-                    return (Bag)r.eval(new Tuple(xs,ys));
-                } }, groupBy(mix));
+        return cmap(join_reducer(r),groupBy(mix,orderp));
+    }
+
+    /** a mapper of mapReduce2 that tags the map values with the input number
+     * @param m a map function from a to {(k,b)}
+     * @param tag the input number
+     * @return a map function from a to {(k,(tag,b))}
+     */
+    private static Function tagged_mapper ( final Function m, final byte tag ) {
+        return new Function() {
+            public Bag eval ( final MRData x ) {
+                return cmap(new Function() {
+                        public Bag eval ( final MRData e ) {
+                            final Tuple p = (Tuple)e;
+                            return new Bag(new Tuple(p.first(),
+                                                     new Tuple(new MR_byte(tag),p.second())));
+                        } }, (Bag)m.eval(x));
+            } };
+    }
+
+    /** the reducer of mapReduce2 that separates the tagged values of a group
+     * @param r reducer from ({a'},{b'}) to {c}
+     * @return a reducer from (k,{(tag,a'|b')}) to {c}
+     */
+    private static Function join_reducer ( final Function r ) {
+        return new Function() {
+            public Bag eval ( final MRData e ) {
+                final Tuple p = (Tuple)e;
+                final Bag xs = cmap(new Function() {
+                        public Bag eval ( final MRData e ) {
+                            final Tuple q = (Tuple)e;
+                            return (((MR_byte)q.first()).get() == 1)
+                                    ? new Bag(q.second())
+                                    : new Bag();
+                        } }, (Bag)p.second());
+                final Bag ys = cmap(new Function() {
+                        public Bag eval ( final MRData e ) {
+                            final Tuple q = (Tuple)e;
+                            return (((MR_byte)q.first()).get() == 2)
+                                    ? new Bag(q.second())
+                                    : new Bag();
+                        } }, (Bag)p.second());
+                xs.materialize();
+                ys.materialize();
+                return (Bag)r.eval(new Tuple(xs,ys));
+            } };
     }
 
     /** The fragment-replicate join (map-side join)
@@ -348,7 +528,7 @@ final public class MapReduceAlgebra {
                                             : new Bag();
                                     } }, X); }
             },
-            groupBy(cmap(new Function() {
+            hashGroupBy(cmap(new Function() {
                     public Bag eval ( final MRData y ) {
                         return new Bag(new Tuple(ky.eval(y),y));
                     } }, Y)));
@@ -371,13 +551,38 @@ final public class MapReduceAlgebra {
                                     final Function acc, MRData zero,
                                     final Function r,
                                     final Bag X, final Bag Y ) {
+        return groupByJoin(kx,ky,gx,gy,acc,zero,r,X,Y,true);
+    }
+
+    /** An equi-join combined with a group-by (see GroupByJoinPlan)
+     * @param kx left key function from a to k
+     * @param ky right key function from b to k
+     * @param gx group-by key function from a to k1
+     * @param gy group-by key function from b to k2
+     * @param acc accumulator from (c,(a,b)) to c
+     * @param zero of type c
+     * @param r reducer from ((k1,k2),c) to d
+     * @param X left input of type {a}
+     * @param Y right input of type {b}
+     * @param orderp does the result need to be ordered?
+     * @return a value of type {d}
+     */
+    public static Bag groupByJoin ( final Function kx, final Function ky,
+                                    final Function gx, final Function gy,
+                                    final Function acc, MRData zero,
+                                    final Function r,
+                                    final Bag X, final Bag Y,
+                                    final boolean orderp ) {
+        if (ParallelAlgebra.parallel_strict(X,Y))
+            return ParallelAlgebra.groupByJoin(kx,ky,gx,gy,acc,zero,r,X,Y,orderp);
         Bag s = groupBy(hash_join(kx,ky,
                                   new Function() {
                                       public MRData eval ( final MRData e ) {
                                           Tuple t = (Tuple)e;
                                           return new Tuple(new Tuple(gx.eval(t.first()),gy.eval(t.second())),t);
                                       } },
-                                  X,Y));
+                                  X,Y),
+                        orderp);
         Bag res = new Bag();
         for ( MRData z: s ) {
             Tuple t = (Tuple)z;
@@ -625,6 +830,38 @@ final public class MapReduceAlgebra {
         return s;
     }
 
+    /** semi-naive transitive closure: the result is the set of values x, where x=init+step(x),
+     *    that is, step is applied to the new values of the previous step only
+     *    until there are no new values or until we reach the max num of steps
+     * @param step a linear function from {a} to {a}
+     * @param init the initial value of type {a}
+     * @param max_num the maximum number of steps
+     * @return a value of type {a} without duplicates
+     */
+    public static Bag delta_closure ( final Function step,
+                                      final Bag init,
+                                      final int max_num ) throws Exception {
+        HashSet<MRData> values = new HashSet<MRData>();
+        Bag s = new Bag();
+        Bag delta = new Bag();
+        for ( MRData x: init )
+            if (values.add(x))
+                delta.add(x);
+        s.addAll(delta);
+        for ( int i = 1; delta.size() > 0 && i <= max_num; i++ ) {
+            MRData d = step.eval(delta);
+            Bag nd = new Bag();
+            for ( MRData x: (d instanceof MR_dataset) ? Plan.collect(((MR_dataset)d).dataset()) : (Bag)d )
+                if (values.add(x))
+                    nd.add(x);
+            if (!Config.testing)
+                System.err.println("*** Repeat #"+i+": "+nd.size()+" new records");
+            s.addAll(nd);
+            delta = nd;
+        };
+        return s;
+    }
+
     /** repetition: repeat the loop until we reach the num of steps
      * @param loop a function from ({a1},...,{ak}) to ({a1},...,{ak})
      * @param init the initial value of type ({a1},...,{ak})
@@ -670,7 +907,7 @@ final public class MapReduceAlgebra {
                                  : new File[]{file};
             final int dl = files.length;
             parser.open(files[0].toString());
-            return new Bag(new BagIterator () {
+            return Statistics.collect(path,new Bag(new BagIterator () {
                     Iterator<MRData> iter;
                     int i = 0;
                     String line;
@@ -688,7 +925,7 @@ final public class MapReduceAlgebra {
                     public MRData next () {
                         return iter.next();
                     }
-                });
+                }));
     }
 
     /** parse a text document using a given parser
@@ -792,7 +1029,11 @@ final public class MapReduceAlgebra {
         try {
             Tree type = get_type(file);
             DataInputStream in = new DataInputStream(new FileInputStream(new File(file)));
-            return MRContainer.read(in);
+            MRData value = MRContainer.read(in);
+            in.close();
+            if (value instanceof Bag)
+                ((Bag)value).columnar(type);
+            return value;
         } catch (Exception e) {
             return null;
         } 
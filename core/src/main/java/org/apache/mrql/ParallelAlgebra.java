@@ -0,0 +1,398 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ *   Parallel evaluation of MRQL algebra expressions in memory using Config.threads threads (-threads).
+ *   The input Bags are split into chunks that are mapped in parallel; the map output is hash-partitioned
+ *   by key and each partition is grouped and reduced in parallel. Operations called from the
+ *   functional arguments of a parallel operation are evaluated sequentially.
+ */
+final class ParallelAlgebra {
+    /** min number of input elements for evaluating an operation in parallel */
+    final static int min_parallel_size = 10000;
+
+    /** number of input chunks per thread (for load balancing) */
+    private final static int chunks_per_thread = 4;
+
+    /** min and max number of input elements in a chunk of a lazy concat-map */
+    private final static int min_lazy_chunk = 16;
+    private final static int max_lazy_chunk = 1024;
+
+    private static ExecutorService pool = null;
+    private static int pool_size = 0;
+
+    /** a thread of the pool */
+    private final static class Worker extends Thread {
+        Worker ( Runnable r ) {
+            super(r);
+            setDaemon(true);
+        }
+    }
+
+    private static synchronized ExecutorService pool () {
+        if (pool == null || pool_size != Config.threads) {
+            if (pool != null)
+                pool.shutdown();
+            pool_size = Config.threads;
+            pool = Executors.newFixedThreadPool(pool_size,new ThreadFactory() {
+                    public Thread newThread ( Runnable r ) {
+                        return new Worker(r);
+                    }
+                });
+        };
+        return pool;
+    }
+
+    /** is parallel evaluation enabled for the current thread? */
+    private static boolean enabled () {
+        return Config.threads > 1 && !Config.hadoop_mode
+               && !(Thread.currentThread() instanceof Worker);
+    }
+
+    /** can a lazy operation over the Bag be evaluated in parallel (without materializing the Bag)? */
+    static boolean parallel ( final Bag s ) {
+        return enabled() && s.materialized() && s.size() >= min_parallel_size;
+    }
+
+    /** can a blocking operation over the Bags be evaluated in parallel? It materializes the Bags */
+    static boolean parallel_strict ( final Bag... inputs ) {
+        if (!enabled())
+            return false;
+        long size = 0;
+        for ( Bag s: inputs ) {
+            s.materialize();
+            if (!s.materialized())
+                return false;
+            size += s.size();
+        };
+        return size >= min_parallel_size;
+    }
+
+    /** run the tasks in the pool and return their results in order */
+    private static <T> ArrayList<T> run ( final List<Callable<T>> tasks ) {
+        try {
+            ArrayList<T> res = new ArrayList<T>(tasks.size());
+            for ( Future<T> f: pool().invokeAll(tasks) )
+                res.add(get(f));
+            return res;
+        } catch (InterruptedException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    /** the boundaries of the chunks of a materialized Bag */
+    private static int[] chunks ( final int size ) {
+        int n = Math.max(1,Math.min(size,Config.threads*chunks_per_thread));
+        int[] bounds = new int[n+1];
+        for ( int i = 0; i <= n; i++ )
+            bounds[i] = (int)((long)size*i/n);
+        return bounds;
+    }
+
+    /** concatenate the Bags in order */
+    private static Bag concat ( final List<Bag> bags ) {
+        int size = 0;
+        for ( Bag b: bags )
+            size += b.size();
+        Bag res = new Bag(size);
+        for ( Bag b: bags )
+            res.addAll(b);
+        return res;
+    }
+
+    /** the results of a chunk of a concat-map */
+    private static Callable<Bag> cmap_task ( final Function f, final Bag s, final int lo, final int hi ) {
+        return new Callable<Bag>() {
+            public Bag call () {
+                Bag res = new Bag();
+                for ( int i = lo; i < hi; i++ )
+                    res.addAll((Bag)f.eval(s.get(i)));
+                return res;
+            }
+        };
+    }
+
+    /** the result of a task */
+    private static <T> T get ( final Future<T> f ) {
+        try {
+            return f.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Error)
+                throw (Error)ex.getCause();
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new Error(ex.getCause());
+        } catch (InterruptedException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    /** lazy parallel concat-map over a materialized Bag; it preserves the order of the results.
+     * The input chunks are evaluated in order, at most Config.threads chunks ahead
+     * of the consumer, and their sizes grow from min_lazy_chunk, so that a partially
+     * consumed result is not computed in full
+     * @param f a function from a to {b}
+     * @param s the input of type {a}
+     * @return a value of type {b}
+     */
+    static Bag cmap ( final Function f, final Bag s ) {
+        final int size = s.size();
+        final int max_chunk = Math.max(min_lazy_chunk,
+                                       Math.min(max_lazy_chunk,size/(Config.threads*chunks_per_thread)));
+        final ExecutorService pool = pool();
+        return new Bag(new BagIterator() {
+                final LinkedList<Future<Bag>> pending = new LinkedList<Future<Bag>>();
+                int position = 0;
+                int chunk = min_lazy_chunk;
+                Iterator<MRData> data = null;
+                void submit () {
+                    while (pending.size() < Config.threads && position < size) {
+                        int hi = Math.min(size,position+chunk);
+                        pending.add(pool.submit(cmap_task(f,s,position,hi)));
+                        position = hi;
+                        chunk = Math.min(max_chunk,2*chunk);
+                    }
+                }
+                public boolean hasNext () {
+                    while (data == null || !data.hasNext()) {
+                        submit();
+                        if (pending.isEmpty())
+                            return false;
+                        data = get(pending.removeFirst()).iterator();
+                    };
+                    return true;
+                }
+                public MRData next () {
+                    return data.next();
+                }
+            });
+    }
+
+    /** the partition of a key */
+    private static int partition ( final MRData key, final int partitions ) {
+        return (MRContainer.hash(key) & Integer.MAX_VALUE) % partitions;
+    }
+
+    /** the parallel map stage: apply the map functions to the input chunks
+     *  and hash-partition the resulting (key,value) pairs by key
+     * @param maps the map functions from a_i to {(k,b)}
+     * @param inputs the materialized inputs of type {a_i}
+     * @param partitions the number of partitions
+     * @return the partitions of every map task
+     */
+    private static ArrayList<ArrayList<MRData>[]> map ( final Function[] maps, final Bag[] inputs,
+                                                        final int partitions ) {
+        ArrayList<Callable<ArrayList<MRData>[]>> tasks = new ArrayList<Callable<ArrayList<MRData>[]>>();
+        for ( int k = 0; k < inputs.length; k++ ) {
+            final Function m = maps[k];
+            final Bag s = inputs[k];
+            final int[] bounds = chunks(s.size());
+            for ( int c = 0; c < bounds.length-1; c++ ) {
+                final int lo = bounds[c];
+                final int hi = bounds[c+1];
+                tasks.add(new Callable<ArrayList<MRData>[]>() {
+                        public ArrayList<MRData>[] call () {
+                            ArrayList<MRData>[] parts = new ArrayList[partitions];
+                            for ( int p = 0; p < partitions; p++ )
+                                parts[p] = new ArrayList<MRData>();
+                            for ( int i = lo; i < hi; i++ )
+                                for ( MRData e: (Bag)m.eval(s.get(i)) )
+                                    parts[partition(((Tuple)e).first(),partitions)].add(e);
+                            return parts;
+                        }
+                    });
+            }
+        };
+        return run(tasks);
+    }
+
+    /** collect the (key,value) pairs of a partition from all map tasks */
+    private static Bag gather ( final ArrayList<ArrayList<MRData>[]> mapped, final int p ) {
+        int size = 0;
+        for ( ArrayList<MRData>[] parts: mapped )
+            size += parts[p].size();
+        Bag s = new Bag(size);
+        for ( ArrayList<MRData>[] parts: mapped )
+            for ( MRData e: parts[p] )
+                s.add(e);
+        return s;
+    }
+
+    /** a cursor over the (key,result) pairs of a reduced partition, ordered by key */
+    private final static class Cursor implements Comparable<Cursor> {
+        final Iterator<MRData> iter;
+        Tuple current;
+        Cursor ( Iterator<MRData> iter ) {
+            this.iter = iter;
+            current = (Tuple)iter.next();
+        }
+        public int compareTo ( Cursor c ) {
+            return current.first().compareTo(c.current.first());
+        }
+    }
+
+    /** parallel map-reduce over multiple inputs
+     * @param maps the map functions from a_i to {(k,b)}
+     * @param r the reduce function from (k,{b}) to {c}
+     * @param inputs the materialized inputs of type {a_i}
+     * @param orderp does the result need to be ordered by key?
+     * @return a value of type {c}
+     */
+    static Bag mapReduce ( final Function[] maps, final Function r,
+                           final Bag[] inputs, final boolean orderp ) {
+        final int partitions = Config.threads;
+        final ArrayList<ArrayList<MRData>[]> mapped = map(maps,inputs,partitions);
+        ArrayList<Callable<Bag>> tasks = new ArrayList<Callable<Bag>>(partitions);
+        for ( int p = 0; p < partitions; p++ ) {
+            final int partition = p;
+            tasks.add(new Callable<Bag>() {
+                    public Bag call () {
+                        Bag groups = MapReduceAlgebra.groupBy(gather(mapped,partition),orderp);
+                        Bag res = new Bag();
+                        if (orderp)   // keep the key of each result for merging
+                            for ( MRData g: groups )
+                                res.add(new Tuple(((Tuple)g).first(),(Bag)r.eval(g)));
+                        else for ( MRData g: groups )
+                                 res.addAll((Bag)r.eval(g));
+                        return res;
+                    }
+                });
+        };
+        ArrayList<Bag> reduced = run(tasks);
+        mapped.clear();
+        if (!orderp)
+            return concat(reduced);
+        // merge the reduced partitions by key
+        PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(partitions);
+        for ( Bag b: reduced )
+            if (b.size() > 0)
+                queue.add(new Cursor(b.iterator()));
+        Bag res = new Bag();
+        while (!queue.isEmpty()) {
+            Cursor c = queue.poll();
+            res.addAll((Bag)c.current.second());
+            if (c.iter.hasNext()) {
+                c.current = (Tuple)c.iter.next();
+                queue.add(c);
+            }
+        };
+        return res;
+    }
+
+    /** parallel cross-product; it preserves the order of the sequential cross-product
+     * @param mx left map function from a to {a'}
+     * @param my right key function from b to {b'}
+     * @param r reducer from (a',b') to {c}
+     * @param X left materialized input of type {a}
+     * @param Y right input of type {b}
+     * @return a value of type {c}
+     */
+    static Bag crossProduct ( final Function mx, final Function my, final Function r,
+                              final Bag X, final Bag Y ) {
+        final Bag a = MapReduceAlgebra.cmap(my,Y);
+        a.materialize();
+        return cmap(new Function() {
+                public MRData eval ( final MRData x ) {
+                    Bag b = new Bag();
+                    for ( MRData xx: (Bag)mx.eval(x) )
+                        for ( MRData y: a )
+                            b.addAll((Bag)r.eval(new Tuple(xx,y)));
+                    return b;
+                } },
+            X);
+    }
+
+    /** parallel equi-join combined with a group-by (see GroupByJoinPlan).
+     *  The inputs are hash-partitioned by the join key and joined in parallel;
+     *  the join results are then grouped and aggregated in parallel
+     * @param kx left key function from a to k
+     * @param ky right key function from b to k
+     * @param gx group-by key function from a to k1
+     * @param gy group-by key function from b to k2
+     * @param acc accumulator from (c,(a,b)) to c
+     * @param zero of type c
+     * @param r reducer from ((k1,k2),c) to d
+     * @param X left materialized input of type {a}
+     * @param Y right materialized input of type {b}
+     * @param orderp does the result need to be ordered?
+     * @return a value of type {d}
+     */
+    static Bag groupByJoin ( final Function kx, final Function ky,
+                             final Function gx, final Function gy,
+                             final Function acc, final MRData zero,
+                             final Function r,
+                             final Bag X, final Bag Y,
+                             final boolean orderp ) {
+        final int partitions = Config.threads;
+        final ArrayList<ArrayList<MRData>[]> mapped
+            = map(new Function[]{ key_pair(kx), key_pair(ky) },new Bag[]{ X, Y },partitions);
+        final int xtasks = chunks(X.size()).length-1;
+        final Function first = new Function() {
+                public MRData eval ( final MRData e ) {
+                    return ((Tuple)e).first();
+                } };
+        final Function group = new Function() {
+                public MRData eval ( final MRData e ) {
+                    Tuple t = (Tuple)e;
+                    MRData x = ((Tuple)t.first()).second();
+                    MRData y = ((Tuple)t.second()).second();
+                    return new Tuple(new Tuple(gx.eval(x),gy.eval(y)),new Tuple(x,y));
+                } };
+        ArrayList<Callable<Bag>> tasks = new ArrayList<Callable<Bag>>(partitions);
+        for ( int p = 0; p < partitions; p++ ) {
+            final int partition = p;
+            tasks.add(new Callable<Bag>() {
+                    public Bag call () {
+                        return MapReduceAlgebra.hash_join(first,first,group,
+                                                          gather(new ArrayList<ArrayList<MRData>[]>(mapped.subList(0,xtasks)),partition),
+                                                          gather(new ArrayList<ArrayList<MRData>[]>(mapped.subList(xtasks,mapped.size())),partition));
+                    }
+                });
+        };
+        Bag[] joined = run(tasks).toArray(new Bag[partitions]);
+        mapped.clear();
+        Function[] maps = new Function[partitions];
+        for ( int p = 0; p < partitions; p++ )
+            maps[p] = new Function() {
+                    public MRData eval ( final MRData e ) {
+                        return new Bag(e);
+                    } };
+        return mapReduce(maps,new Function() {
+                public MRData eval ( final MRData e ) {
+                    Tuple t = (Tuple)e;
+                    MRData v = zero;
+                    for ( MRData x: (Bag)t.second() )
+                        v = acc.eval(new Tuple(v,x));
+                    return new Bag(r.eval(new Tuple(t.first(),v)));
+                } },
+            joined,orderp);
+    }
+
+    /** a map function from a to {(k(a),a)} */
+    private static Function key_pair ( final Function k ) {
+        return new Function() {
+            public MRData eval ( final MRData e ) {
+                return new Bag(new Tuple(k.eval(e),e));
+            } };
+    }
+}
@@ -24,13 +24,14 @@ import java.util.ArrayList;
 import org.apache.hadoop.fs.*;
 import org.apache.hadoop.io.*;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.SequenceFile.Sorter;
 
 
 /** A physical plan (a superclass for both MapReduce, BSP, and Spark plans) */
 public class Plan {
     public static Configuration conf;
     static ArrayList<String> temporary_paths = new ArrayList<String>();
+    // the prefix of the temporary file names (see Session)
+    static String temporary_prefix = "mrql";
     private static Random random_generator = new Random();
     final static int max_input_files = 100;
 
@@ -41,7 +42,7 @@ public class Plan {
                      : "mrql";
         Path p;
         do {
-            p = new Path(dir+"/mrql"+random_generator.nextInt(1000000));
+            p = new Path(dir+"/"+temporary_prefix+random_generator.nextInt(1000000));
         } while (p.getFileSystem(conf).exists(p));
         String path = p.toString();
         temporary_paths.add(path);
@@ -158,6 +159,12 @@ public class Plan {
         return new DataSet(new BinaryDataSource(-1,file,conf),0,0);
     }
 
+    /** The source physical operator for binary files with the columns and the predicate
+     *  used by the scan (if the files are columnar; see ColumnarFile) */
+    public final static DataSet binarySource ( int source_num, String file, Tree pushdown ) {
+        return new DataSet(new BinaryDataSource(source_num,file,pushdown,conf),0,0);
+    }
+
     /** splits the range min..max into multiple ranges, one for each mapper */
     public final static DataSet generator ( int source_num, long min, long max, long split_length ) throws Exception {
         if (min > max)
@@ -211,7 +218,7 @@ public class Plan {
         return new DataSet(new ParsedDataSource(file,parser,args,conf),0,0);
     }
 
-    /** merge the sorted files of the data source */
+    /** merge the sorted files of the data source (see ExternalMerge) */
     public final static Bag merge ( final DataSource s ) throws Exception {
         Path path = new Path(s.path);
         final FileSystem fs = path.getFileSystem(conf);
@@ -222,80 +229,10 @@ public class Plan {
                                     return !path.getName().startsWith("_");
                                 }
                             });
-        int dl = ds.length;
-        if (dl == 0)
-            return new Bag();
-        Path[] paths = new Path[dl];
-        for ( int i = 0; i < dl; i++ )
-            paths[i] = ds[i].getPath();
-        if (dl > Config.max_merged_streams) {
-            if (Config.trace)
-                System.out.println("Merging "+dl+" files");
-            Path out_path = new Path(new_path(conf));
-            SequenceFile.Sorter sorter
-                = new SequenceFile.Sorter(fs,new MRContainerKeyComparator(),
-                                          MRContainer.class,MRContainer.class,conf);
-            sorter.merge(paths,out_path);
-            paths = new Path[1];
-            paths[0] = out_path;
-        };
-        final int n = paths.length;
-        SequenceFile.Reader[] sreaders = new SequenceFile.Reader[n];
-        for ( int i = 0; i < n; i++ ) 
-            sreaders[i] = new SequenceFile.Reader(fs,paths[i],conf);
-        final SequenceFile.Reader[] readers = sreaders;
-        final MRContainer[] keys_ = new MRContainer[n];
-        final MRContainer[] values_ = new MRContainer[n];
-        for ( int i = 0; i < n; i++ ) {
-            keys_[i] = new MRContainer();
-            values_[i] = new MRContainer();
-        };
-        return new Bag(new BagIterator () {
-                int min = 0;
-                boolean first = true;
-                final MRContainer[] keys = keys_;
-                final MRContainer[] values = values_;
-                final MRContainer key = new MRContainer();
-                final MRContainer value = new MRContainer();
-                public boolean hasNext () {
-                    if (first)
-                        try {
-                            first = false;
-                            for ( int i = 0; i < n; i++ )
-                                if (readers[i].next(key,value)) {
-                                    keys[i].set(key.data());
-                                    values[i].set(value.data());
-                                } else {
-                                    keys[i] = null;
-                                    readers[i].close();
-                                }
-                        } catch (IOException e) {
-                            throw new Error("Cannot merge values from an intermediate result");
-                        };
-                    min = -1;
-                    for ( int i = 0; i < n; i++ )
-                        if (keys[i] != null && min < 0)
-                            min = i;
-                        else if (keys[i] != null && keys[i].compareTo(keys[min]) < 0)
-                            min = i;
-                    return min >= 0;
-                }
-                public MRData next () {
-                    try {
-                        MRData res = values[min].data();
-                        if (readers[min].next(key,value)) {
-                            keys[min].set(key.data());
-                            values[min].set(value.data());
-                        } else {
-                            keys[min] = null;
-                            readers[min].close();
-                        };
-                        return res;
-                    } catch (IOException e) {
-                        throw new Error("Cannot merge values from an intermediate result");
-                    }
-                }
-            });
+        ArrayList<ExternalMerge.Run> runs = new ArrayList<ExternalMerge.Run>(ds.length);
+        for ( FileStatus d: ds )
+            runs.add(new ExternalMerge.SequenceRun(fs,d.getPath(),conf,false));
+        return ExternalMerge.merge(runs,conf);
     }
 
     /** The collect physical operator */
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import org.apache.mrql.gen.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** A cache of the optimized plans of the queries evaluated at the top level.
+ *  A query that is equal to a previous query up to the names of its bound variables
+ *  reuses the previous plan without type-checking and optimizing the query again.
+ *  The cache is cleared when a top-level definition (type, function, macro, etc) changes
+ *  and it is bypassed when the data source statistics change */
+final class PlanCache {
+    // the maximum number of plans in the cache
+    static int max_cached_plans = 200;
+
+    // the number of cache hits and misses
+    final static AtomicLong hits = new AtomicLong(0);
+    final static AtomicLong misses = new AtomicLong(0);
+
+    /** a cached plan along with everything translate_expression reports about it */
+    final static class Entry {
+        final String plan;        // the plan before compilation (plans may be changed during evaluation)
+        final Tree type;          // the query type
+        final boolean is_dataset; // does the plan return a dataset?
+        final String message;     // the printed physical plan (may be null)
+        final Trees repeat_variables;
+        Compiler.CompiledPlan compiled;  // the plan with compiled functional arguments (see Compiler)
+
+        Entry ( Tree plan, Tree type, boolean is_dataset, String message, Trees repeat_variables ) {
+            this.plan = plan.toString();
+            this.type = type;
+            this.is_dataset = is_dataset;
+            this.message = message;
+            this.repeat_variables = repeat_variables;
+        }
+
+        Tree plan () {
+            try {
+                return Tree.parse(plan);
+            } catch (Exception ex) {
+                throw new Error(ex);
+            }
+        }
+    }
+
+    // the cached plans (each Session has its own cache)
+    static LinkedHashMap<String,Entry> cache = new_cache();
+
+    static LinkedHashMap<String,Entry> new_cache () {
+        // in access order, so that the least recently used plan is evicted first
+        return new LinkedHashMap<String,Entry>(16,0.75f,true) {
+            protected boolean removeEldestEntry ( Map.Entry<String,Entry> eldest ) {
+                if (size() <= max_cached_plans)
+                    return false;
+                release(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    private static void variables ( Tree e, TreeSet<String> vs ) {
+        if (e.is_variable())
+            vs.add(e.toString());
+        else if (e instanceof Node)
+            for ( Tree a: ((Node)e).children() )
+                variables(a,vs);
+    }
+
+    private static void append ( StringBuffer sb, String v, String kind, Object value ) {
+        if (value != null)
+            sb.append(' ').append(kind).append(':').append(v).append('=').append(value);
+    }
+
+    /** the cache key of a query: the structural key of the query, the configuration parameters
+     *  used by the optimizer, and the current definitions of the names used in the query.
+     *  It must be called before type inference, which changes the query */
+    static String key ( Tree e ) {
+        StringBuffer sb = new StringBuffer(1000);
+        sb.append(Config.hadoop_mode).append(Config.bsp_mode).append(Config.spark_mode)
+          .append(Config.flink_mode).append(Config.compile_functional_arguments)
+          .append(Config.noMapJoin).append(Config.mapjoin_size).append(Config.use_combiner)
+          .append(Config.groupJoinOpt).append(Config.selfJoinOpt).append(Config.nodes)
+          .append(Config.trace_execution).append(Config.trace_exp_execution)
+          .append(Config.delta_closure).append(Config.bytecode_only).append(Config.javac_only)
+          .append(' ').append(Statistics.version)
+          .append(' ').append(Translator.structural_key(e));
+        TreeSet<String> vs = new TreeSet<String>();
+        variables(e,vs);
+        for ( String v: vs ) {
+            append(sb,v,"type",Translator.global_type_env.lookup(v));
+            append(sb,v,"var",Translator.global_vars.lookup(v));
+            append(sb,v,"fnc",Translator.global_functions.lookup(v));
+            append(sb,v,"macro",Translator.global_macros.lookup(v));
+            append(sb,v,"typedef",Translator.type_names.lookup(v));
+            append(sb,v,"data",Translator.global_datatype_env.lookup(v));
+        };
+        return sb.toString();
+    }
+
+    /** the cached plan of the query with the given key (null if not cached) */
+    static Entry lookup ( String key ) {
+        Entry entry = cache.get(key);
+        if (entry == null)
+            misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return entry;
+    }
+
+    /** cache the plan of the query with the given key */
+    static void insert ( String key, Entry entry ) {
+        cache.put(key,entry);
+    }
+
+    /** release the compiled code of a plan that is removed from the cache */
+    private static void release ( Entry entry ) {
+        if (entry.compiled != null)
+            Compiler.release(entry.compiled);
+    }
+
+    /** remove all cached plans */
+    static void clear () {
+        for ( Entry entry: cache.values() )
+            release(entry);
+        cache = new_cache();
+    }
+
+    /** the cache statistics */
+    static String statistics () {
+        return "Plan cache: "+cache.size()+" plans, "+hits.get()+" hits, "+misses.get()+" misses";
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.util.*;
+
+
+/** A pull-based cursor over the result of a query that hands out the result values in batches.
+ *  The values of a distributed result (a DataSet) are read from its data sources one source
+ *  at a time and are never collected into a single Bag: the files of a data source are read
+ *  lazily and the sorted files of a data source that needs merging are merged on the fly */
+public class ResultCursor implements Iterator<MRData> {
+    // the default number of values in a batch
+    final static int default_batch_size = 1000;
+
+    private final DataSet dataset;     // the distributed result (null for an in-memory result)
+    private int next_source = 0;       // the next data source of the dataset to be read
+    private Iterator<MRData> values;   // the values of the current data source
+    private final int batch_size;
+    private Bag batch = null;          // the current batch
+    private int position = 0;          // the position of the next value in the current batch
+    private boolean done = false;
+
+    /** a cursor over the result of a query
+     * @param result the query result (an MR_dataset, a Bag, or a single value)
+     * @param batch_size the maximum number of values in a batch used by the iterator
+     */
+    public ResultCursor ( MRData result, int batch_size ) {
+        this.batch_size = Math.max(1,batch_size);
+        if (result instanceof MR_dataset) {
+            dataset = ((MR_dataset)result).dataset();
+            values = null;
+        } else {
+            dataset = null;
+            values = (result instanceof Bag) ? ((Bag)result).iterator() : new Bag(result).iterator();
+        }
+    }
+
+    /** a cursor over the result of a query */
+    public ResultCursor ( MRData result ) {
+        this(result,default_batch_size);
+    }
+
+    /** a cursor over a distributed result */
+    public ResultCursor ( DataSet dataset ) {
+        this(new MR_dataset(dataset));
+    }
+
+    /** the values of the next data source of the dataset (null if there are no more sources) */
+    private Iterator<MRData> next_source () {
+        if (dataset == null || next_source >= dataset.source.size())
+            return null;
+        DataSource s = dataset.source.get(next_source++);
+        try {
+            return Plan.collect(new DataSet(s,0,0)).iterator();
+        } catch (Exception ex) {
+            throw new Error("Cannot read the query result from "+s.path+": "+ex);
+        }
+    }
+
+    /** the next batch of values
+     * @param max the maximum number of values in the batch
+     * @return a materialized Bag that is empty when there are no more values
+     */
+    public Bag next_batch ( int max ) {
+        Bag b = new Bag(Math.min(max,default_batch_size));
+        while (b.size() < max) {
+            if (values == null || !values.hasNext()) {
+                values = next_source();
+                if (values == null)
+                    break;
+            } else b.add(values.next());
+        };
+        return b;
+    }
+
+    public boolean hasNext () {
+        if (batch != null && position < batch.size())
+            return true;
+        if (done)
+            return false;
+        batch = next_batch(batch_size);
+        position = 0;
+        done = batch.size() < batch_size;
+        return batch.size() > 0;
+    }
+
+    public MRData next () {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return batch.get(position++);
+    }
+
+    public void remove () {
+        throw new UnsupportedOperationException();
+    }
+}
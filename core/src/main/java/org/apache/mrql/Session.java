@@ -0,0 +1,439 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import org.apache.mrql.gen.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+
+/** An isolated MRQL workspace to be used when MRQL is embedded in another application.
+ *  A session owns its global variables, its type, function, and macro definitions,
+ *  its configuration parameters (see Config), its temporary files, its plan cache (see PlanCache),
+ *  and the class loaders of its compiled functional arguments (see Compiler).
+ *  Sessions are not concurrent: the MRQL compiler and evaluators keep their state
+ *  in static fields, so a session installs its own state when it starts a query
+ *  and saves it back when the query is done. Sessions may be used from any thread,
+ *  but all sessions of a JVM (and MRQL.query) plan and evaluate one query at a time,
+ *  on a single lock. Running many queries in parallel requires one JVM per concurrent query.
+ *  For example:
+ *  <pre>
+ *    Session s = new Session();
+ *    s.evaluate("E = source(line,\"employees.txt\",\",\",type(<name:string,dno:int>));");
+ *    Session.Query q = s.prepare("select e.name from e in E where e.dno = d","d");
+ *    for ( MRData x: q.bind("d",new MR_int(10)) )
+ *        System.out.println(x);
+ *    s.close();
+ *  </pre>
+ */
+final public class Session {
+    // the lock that serializes the use of the MRQL compiler and evaluators by all sessions
+    final static ReentrantLock lock = new ReentrantLock();
+    private static int session_count = 0;
+
+    /** the global state of the MRQL compiler and evaluator */
+    private final static class State {
+        Environment global_env;
+        SymbolTable global_type_env;
+        SymbolTable global_datatype_env;
+        SymbolTable global_vars;
+        SymbolTable global_functions;
+        SymbolTable global_macros;
+        SymbolTable type_names;
+        SymbolTable data_constructors;
+        Trees monoids;
+        Trees impure_functions;
+        Configuration conf;
+        ArrayList<String> temporary_paths;
+        String temporary_prefix;
+        LinkedHashMap<String,PlanCache.Entry> plans;
+        Map<String,Compiler.LambdaLoader> lambda_loaders;
+
+        /** save the current global state */
+        void save () {
+            global_env = Interpreter.global_env;
+            global_type_env = Translator.global_type_env;
+            global_datatype_env = Translator.global_datatype_env;
+            global_vars = Translator.global_vars;
+            global_functions = Translator.global_functions;
+            global_macros = Translator.global_macros;
+            type_names = Translator.type_names;
+            data_constructors = Translator.data_constructors;
+            monoids = Translator.monoids;
+            impure_functions = Translator.impure_functions;
+            conf = Plan.conf;
+            if (conf != null)
+                Config.write(conf);
+            temporary_paths = Plan.temporary_paths;
+            temporary_prefix = Plan.temporary_prefix;
+            plans = PlanCache.cache;
+            lambda_loaders = Compiler.lambda_loaders;
+        }
+
+        /** make this state the current global state */
+        void restore () {
+            Interpreter.global_env = global_env;
+            Translator.global_type_env = global_type_env;
+            Translator.global_datatype_env = global_datatype_env;
+            Translator.global_vars = global_vars;
+            Translator.global_functions = global_functions;
+            Translator.global_macros = global_macros;
+            Translator.type_names = type_names;
+            Translator.data_constructors = data_constructors;
+            Translator.monoids = monoids;
+            Translator.impure_functions = impure_functions;
+            Plan.conf = conf;
+            if (conf != null)
+                Config.read(conf);
+            Plan.temporary_paths = temporary_paths;
+            Plan.temporary_prefix = temporary_prefix;
+            PlanCache.cache = plans;
+            Compiler.lambda_loaders = lambda_loaders;
+        }
+    }
+
+    private final State state = new State();
+    // the state of the thread before it entered this session
+    private final Stack<State> saved = new Stack<State>();
+    private boolean closed = false;
+
+    /** start a new session with the current configuration parameters */
+    public Session () {
+        lock.lock();
+        try {
+            State current = new State();
+            current.save();
+            int id = ++session_count;
+            // a session starts with the initial definitions only
+            Translator.global_type_env = new SymbolTable();
+            Translator.global_datatype_env = new SymbolTable();
+            Translator.global_vars = new SymbolTable();
+            Translator.global_functions = new SymbolTable();
+            Translator.global_macros = new SymbolTable();
+            Translator.type_names = new SymbolTable();
+            Translator.data_constructors = new SymbolTable();
+            Interpreter.global_env = null;
+            Plan.conf = (current.conf == null) ? new Configuration() : new Configuration(current.conf);
+            Plan.temporary_paths = new ArrayList<String>();
+            Plan.temporary_prefix = "mrql_s"+id+"_";
+            PlanCache.cache = PlanCache.new_cache();
+            Compiler.lambda_loaders = Compiler.new_lambda_loaders();
+            new TopLevel();
+            state.save();
+            current.restore();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** install the state of this session (must be followed by exit) */
+    private void enter () {
+        lock.lock();
+        if (closed) {
+            lock.unlock();
+            throw new Error("The MRQL session has been closed");
+        };
+        State current = new State();
+        current.save();
+        saved.push(current);
+        state.restore();
+    }
+
+    /** save the state of this session and restore the previous state */
+    private void exit () {
+        try {
+            state.save();
+            saved.pop().restore();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** set a configuration parameter of this session, such as mrql.nodes (see Config.write) */
+    public void set ( String parameter, String value ) {
+        enter();
+        try {
+            Plan.conf.set(parameter,value);
+            Config.read(Plan.conf);
+        } finally {
+            exit();
+        }
+    }
+
+    /** parse MRQL commands into top-level items without evaluating them */
+    private static ArrayList<Tree> parse ( String commands ) {
+        ArrayList<Tree> items = new ArrayList<Tree>();
+        ArrayList<Tree> old_items = Translator.parsed_items;
+        MRQLParser old_parser = Main.parser;
+        try {
+            Translator.parsed_items = items;
+            MRQLLex scanner = new MRQLLex(new StringReader(commands));
+            Main.parser = new MRQLParser(scanner);
+            Main.parser.setScanner(scanner);
+            MRQLLex.reset();
+            Main.parser.parse();
+        } catch (Exception ex) {
+            throw new Error("Cannot parse the MRQL commands: "+ex);
+        } finally {
+            Translator.parsed_items = old_items;
+            Main.parser = old_parser;
+        };
+        return items;
+    }
+
+    /** parse a single MRQL query */
+    static Tree parse_query ( String query ) {
+        ArrayList<Tree> items = parse(query+";");
+        if (items.size() == 1 && items.get(0) instanceof Node
+            && ((Node)items.get(0)).name().equals("expression"))
+            return ((Node)items.get(0)).children().head();
+        throw new Error("Expected a single MRQL query: "+query);
+    }
+
+    /** translate and evaluate a query; datasets are collected into bags (if collect is true) and
+     *  lazy bags are materialized, since they depend on the state of the session */
+    private static MRData eval ( Tree e, boolean collect ) {
+        Translator.reset();
+        Tree plan = Interpreter.translate_expression(e);
+        if (plan == null)
+            throw new Error("Cannot translate the MRQL query: "+e);
+        if (Config.hadoop_mode)
+            Evaluator.evaluator.initialize_query();
+        MRData res = Interpreter.evalE(plan,null);
+        try {
+            if (collect && res instanceof MR_dataset)
+                res = Plan.collect(((MR_dataset)res).dataset());
+            if (res instanceof Bag)
+                ((Bag)res).materialize();
+        } catch (Exception ex) {
+            throw new Error(ex);
+        };
+        return res;
+    }
+
+    /** evaluate MRQL commands (separated by ;) in this session
+     * @param commands a string that contains MRQL commands
+     */
+    public void evaluate ( String commands ) {
+        enter();
+        try {
+            for ( Tree item: parse(commands) )
+                TopLevel.evaluate_top_level(item);
+        } finally {
+            exit();
+        }
+    }
+
+    /** evaluate an MRQL query in this session
+     * @param query a string that contains an MRQL query
+     * @return the query result
+     */
+    public MRData query ( String query ) {
+        enter();
+        try {
+            return eval(parse_query(query),true);
+        } finally {
+            exit();
+        }
+    }
+
+    /** evaluate an MRQL query in this session and return a cursor over its result
+     * @param query a string that contains an MRQL query
+     * @return a cursor that reads the query result in batches
+     */
+    public ResultCursor cursor ( String query ) {
+        return prepare(query).cursor(ResultCursor.default_batch_size);
+    }
+
+    /** prepare an MRQL query that has parameters
+     * @param query a string that contains an MRQL query
+     * @param parameters the names of the query parameters
+     * @return the prepared query
+     */
+    public Query prepare ( String query, String... parameters ) {
+        enter();
+        try {
+            return new Query(parse_query(query),parameters);
+        } finally {
+            exit();
+        }
+    }
+
+    /** remove the most recent global binding of the variable v, which may hide
+     *  an older binding of v (unlike Interpreter.remove_global_binding) */
+    private static void remove_last_binding ( String v ) {
+        Environment env = Interpreter.global_env;
+        if (env == null)
+            return;
+        if (v.equals(env.name)) {
+            Interpreter.global_env = env.next;
+            return;
+        };
+        for ( ; env.next != null; env = env.next )
+            if (v.equals(env.next.name)) {
+                env.next = env.next.next;
+                return;
+            }
+    }
+
+    /** A prepared query. The query is parsed once and its plan is translated during
+     *  the first evaluation only (see PlanCache), since the plan depends on the types
+     *  of the parameters, but not on their values. A prepared query must not be
+     *  bound and evaluated by many threads at the same time */
+    final public class Query implements Iterable<MRData> {
+        private final String query;
+        private final String[] parameters;
+        private final MRData[] values;
+        private final Tree[] types;
+
+        private Query ( Tree query, String[] parameters ) {
+            this.query = query.toString();
+            this.parameters = parameters;
+            values = new MRData[parameters.length];
+            types = new Tree[parameters.length];
+        }
+
+        private int parameter ( String name ) {
+            for ( int i = 0; i < parameters.length; i++ )
+                if (parameters[i].equals(name))
+                    return i;
+            throw new Error("Unknown query parameter: "+name);
+        }
+
+        /** bind a query parameter to a value
+         * @param name the parameter name
+         * @param value the parameter value
+         * @param type the MRQL type of the value in its internal form, such as bag(tuple(int,string))
+         */
+        public Query bind ( String name, MRData value, String type ) {
+            int i = parameter(name);
+            try {
+                types[i] = Tree.parse(type);
+            } catch (Exception ex) {
+                throw new Error("Wrong type of query parameter "+name+": "+type);
+            };
+            values[i] = value;
+            return this;
+        }
+
+        /** bind a query parameter to a value of a basic type */
+        public Query bind ( String name, MRData value ) {
+            String type = (value instanceof MR_int) ? "int"
+                        : (value instanceof MR_long) ? "long"
+                        : (value instanceof MR_double) ? "double"
+                        : (value instanceof MR_float) ? "float"
+                        : (value instanceof MR_string) ? "string"
+                        : (value instanceof MR_bool) ? "bool"
+                        : (value instanceof MR_short) ? "short"
+                        : (value instanceof MR_char) ? "char"
+                        : null;
+            if (type == null)
+                throw new Error("The type of the query parameter "+name+" is required");
+            return bind(name,value,type);
+        }
+
+        /** evaluate the query using the current parameter bindings */
+        public MRData execute () {
+            return execute(true);
+        }
+
+        private MRData execute ( boolean collect ) {
+            for ( int i = 0; i < parameters.length; i++ )
+                if (values[i] == null)
+                    throw new Error("The query parameter "+parameters[i]+" is not bound");
+            enter();
+            String gvs = (Plan.conf == null) ? null : Plan.conf.get("mrql.global.vars");
+            // the session variables that have the same names as the parameters
+            Tree[] shadowed = new Tree[parameters.length];
+            try {
+                for ( int i = 0; i < parameters.length; i++ ) {
+                    shadowed[i] = Translator.global_vars.lookup(parameters[i]);
+                    if (shadowed[i] != null)
+                        Translator.global_vars.remove(parameters[i]);
+                    Translator.global_type_env.insert(parameters[i],types[i]);
+                    Interpreter.new_distributed_binding(parameters[i],values[i]);
+                };
+                return eval(Tree.parse(query),collect);
+            } catch (Exception ex) {
+                throw new Error(ex);
+            } finally {
+                for ( int i = 0; i < parameters.length; i++ ) {
+                    Translator.global_type_env.remove(parameters[i]);
+                    remove_last_binding(parameters[i]);
+                    if (shadowed[i] != null)
+                        Translator.global_vars.insert(parameters[i],shadowed[i]);
+                };
+                if (Plan.conf != null)
+                    Plan.conf.set("mrql.global.vars",(gvs == null) ? "" : gvs);
+                exit();
+            }
+        }
+
+        /** evaluate the query and return a cursor over its result; a distributed result
+         *  is not collected but it is read in batches, within this session
+         * @param batch_size the maximum number of values read at once
+         */
+        public ResultCursor cursor ( int batch_size ) {
+            return new ResultCursor(execute(false),batch_size) {
+                public Bag next_batch ( int max ) {
+                    enter();
+                    try {
+                        return super.next_batch(max);
+                    } finally {
+                        exit();
+                    }
+                }
+            };
+        }
+
+        /** evaluate the query and iterate over the elements of its result */
+        public Iterator<MRData> iterator () {
+            return cursor(ResultCursor.default_batch_size);
+        }
+    }
+
+    /** remove the temporary files and the cached plans of this session and end the session
+     *  (closing a closed session does nothing) */
+    public void close () {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            enter();
+            try {
+                PlanCache.clear();
+                for ( String p: Plan.temporary_paths )
+                    try {
+                        Path path = new Path(p);
+                        path.getFileSystem(Plan.conf).delete(path,true);
+                    } catch (IOException ex) {
+                        System.err.println("*** Cannot remove the temporary file "+p);
+                    };
+                Plan.temporary_paths.clear();
+                closed = true;
+            } finally {
+                exit();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+
+/** Skew handling for the reduce-side join (MapReduce2). The heavy join keys are found from
+ *  a uniform sample of the left join keys, which is taken by an extra pass over the left input
+ *  (enabled with -skew_sample). The left values of a heavy key are spread round-robin
+ *  over several reducers, while its right values are replicated to all these reducers.
+ *  It is only used when the reducer distributes over the left input
+ *  (see PlanGeneration.blocked_MapReduce2_reducer).
+ *  When used, every join key k is replaced with the pair (k,i), where i is the
+ *  partition of a heavy key (always 0 for other keys) */
+final public class SkewJoin implements Serializable {
+    // the heavy keys and the number of reducers for each one
+    final HashMap<MRData,Integer> heavy_keys;
+    private int count = 0;
+
+    SkewJoin ( HashMap<MRData,Integer> heavy_keys ) {
+        this.heavy_keys = heavy_keys;
+    }
+
+    /** find the heavy keys from a sample of the left join keys
+     * @param sample     the sampled join keys
+     * @param reducers   the number of reducers
+     * @return null if there are no heavy keys
+     */
+    public static SkewJoin sample ( Iterable<MRData> sample, int reducers ) {
+        if (reducers < 2)
+            return null;
+        HashMap<MRData,Integer> counts = new HashMap<MRData,Integer>();
+        int total = 0;
+        for ( MRData k: sample ) {
+            Integer c = counts.get(k);
+            counts.put(k,(c == null) ? 1 : c+1);
+            total++;
+        };
+        // ignore small samples
+        int min_count = Math.max(2,total/100);
+        HashMap<MRData,Integer> heavy = new HashMap<MRData,Integer>();
+        for ( Map.Entry<MRData,Integer> e: counts.entrySet() ) {
+            int c = e.getValue();
+            // a key is heavy if it is expected to take more than one reducer
+            if (c >= min_count && (long)c*reducers > total) {
+                int ways = Math.min(reducers,(int)Math.ceil((double)c*reducers/total)+1);
+                heavy.put(e.getKey(),ways);
+                if (Config.trace)
+                    System.out.println("Heavy join key "+e.getKey()+" ("+c+" out of "+total
+                                       +" sampled keys) is joined by "+ways+" reducers");
+            }
+        };
+        return (heavy.isEmpty()) ? null : new SkewJoin(heavy);
+    }
+
+    /** A uniform sample of at most n join keys of a partition of the left join input
+     *  (reservoir sampling), along with the number of join keys in the partition */
+    final static class Reservoir {
+        final int n;
+        final ArrayList<MRData> keys;
+        long count = 0;
+        final Random random = new Random();
+
+        Reservoir ( int n ) {
+            this.n = n;
+            keys = new ArrayList<MRData>(n);
+        }
+
+        void add ( MRData key ) {
+            if (count < n)
+                keys.add(key);
+            else {
+                long j = (long)(random.nextDouble()*(count+1));
+                if (j < n)
+                    keys.set((int)j,key);
+            };
+            count++;
+        }
+
+        /** the sample as a pair (count,keys) (see merge) */
+        Tuple sample () {
+            Bag s = new Bag();
+            for ( MRData k: keys )
+                s.add(k);
+            return new Tuple(new MR_long(count),s);
+        }
+    }
+
+    /** merge the samples (count,keys) of the partitions of the left join input (see Reservoir)
+     *  into a uniform sample of about n join keys, to which each partition contributes
+     *  a number of keys that is proportional to its size */
+    public static Bag merge ( Iterable<MRData> samples, int n ) {
+        long total = 0;
+        for ( MRData s: samples )
+            total += ((MR_long)((Tuple)s).first()).get();
+        Bag keys = new Bag();
+        if (total == 0)
+            return keys;
+        Random random = new Random();
+        for ( MRData s: samples ) {
+            Tuple t = (Tuple)s;
+            ArrayList<MRData> ks = new ArrayList<MRData>();
+            for ( MRData k: (Bag)t.second() )
+                ks.add(k);
+            // the order of a reservoir is not random
+            Collections.shuffle(ks,random);
+            long m = Math.min(ks.size(),Math.round((double)n*((MR_long)t.first()).get()/total));
+            for ( int i = 0; i < m; i++ )
+                keys.add(ks.get(i));
+        };
+        return keys;
+    }
+
+    /** the new join key of a left value with join key k */
+    public MRData left_key ( MRData k ) {
+        Integer ways = heavy_keys.get(k);
+        if (ways == null)
+            return new Tuple(k,new MR_int(0));
+        count = (count+1) % ways;
+        return new Tuple(k,new MR_int(count));
+    }
+
+    /** the new join keys of a right value with join key k */
+    public Bag right_keys ( MRData k ) {
+        Integer ways = heavy_keys.get(k);
+        if (ways == null)
+            return new Bag(new Tuple(k,new MR_int(0)));
+        Bag s = new Bag(ways);
+        for ( int i = 0; i < ways; i++ )
+            s.add(new Tuple(k,new MR_int(i)));
+        return s;
+    }
+
+    /** the original join key */
+    public static MRData key ( MRData k ) {
+        return ((Tuple)k).first();
+    }
+
+    /** encode the heavy keys as a string (to be stored in a Hadoop configuration) */
+    public String encode () {
+        try {
+            Bag s = new Bag();
+            for ( Map.Entry<MRData,Integer> e: heavy_keys.entrySet() )
+                s.add(new Tuple(e.getKey(),new MR_int(e.getValue())));
+            ByteArrayOutputStream bs = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bs);
+            s.write(out);
+            out.close();
+            StringBuffer sb = new StringBuffer();
+            for ( byte b: bs.toByteArray() )
+                sb.append(String.format("%02x",b));
+            return sb.toString();
+        } catch (IOException ex) {
+            throw new Error("Cannot encode the heavy join keys: "+ex);
+        }
+    }
+
+    /** decode the heavy keys from a string generated by encode */
+    public static SkewJoin decode ( String s ) {
+        if (s == null || s.equals(""))
+            return null;
+        try {
+            byte[] b = new byte[s.length()/2];
+            for ( int i = 0; i < b.length; i++ )
+                b[i] = (byte)Integer.parseInt(s.substring(2*i,2*i+2),16);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(b));
+            HashMap<MRData,Integer> heavy = new HashMap<MRData,Integer>();
+            for ( MRData e: (Bag)MRContainer.read(in) )
+                heavy.put(((Tuple)e).first(),((MR_int)((Tuple)e).second()).get());
+            return new SkewJoin(heavy);
+        } catch (IOException ex) {
+            throw new Error("Cannot decode the heavy join keys: "+ex);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import org.apache.mrql.gen.*;
+import java.io.*;
+import java.util.*;
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.conf.Configuration;
+
+
+/** A catalog of data source statistics, used by QueryPlan to estimate the cardinalities
+ *  of the query graph nodes and the selectivities of the join predicates.
+ *  The statistics of a data source are collected by the analyze(e) command (using a distributed
+ *  aggregation in distributed mode) or by the first complete scan of a parsed data source in memory mode. They are stored in the file
+ *  Config.statistics_file (if given) and are discarded when the data source is modified.
+ *  The fields of a data source value (a tuple or a record) are identified by position */
+final class Statistics {
+    // incremented when the catalog changes (part of the plan cache key)
+    static long version = 0;
+
+    private static HashMap<String,Source> catalog = null;
+    private static Configuration local_conf = null;
+
+    /** the statistics of a field */
+    final static class Field {
+        long distinct;    // estimated number of distinct values
+        double min;       // min numerical value (NaN if not numerical)
+        double max;       // max numerical value (NaN if not numerical)
+
+        Field ( long distinct, double min, double max ) {
+            this.distinct = distinct;
+            this.min = min;
+            this.max = max;
+        }
+
+        /** the fraction of values less than (or greater than, if less is false) the constant c */
+        double range_selectivity ( double c, boolean less ) {
+            if (Double.isNaN(min) || max <= min)
+                return 1.0/3;
+            double s = (c-min)/(max-min);
+            s = (less) ? s : 1.0-s;
+            return Math.min(1.0,Math.max(s,1.0/Math.max(distinct,1)));
+        }
+
+        public String toString () {
+            return distinct+":"+min+":"+max;
+        }
+    }
+
+    /** the statistics of a data source */
+    final static class Source {
+        final String path;
+        long rows;        // number of values
+        long bytes;       // data source size in bytes
+        long modified;    // data source modification time
+        Field[] fields;   // the statistics of the tuple components (empty if the values are not tuples)
+
+        Source ( String path, long rows, long bytes, long modified, Field[] fields ) {
+            this.path = path;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.modified = modified;
+            this.fields = fields;
+        }
+
+        /** the statistics of the i'th field (null if unknown) */
+        Field field ( int i ) {
+            return (i >= 0 && i < fields.length) ? fields[i] : null;
+        }
+
+        public String toString () {
+            StringBuffer sb = new StringBuffer();
+            sb.append(path).append('\t').append(rows).append('\t')
+              .append(bytes).append('\t').append(modified);
+            for ( Field f: fields )
+                sb.append('\t').append(f);
+            return sb.toString();
+        }
+
+        static Source parse ( String line ) {
+            String[] s = line.split("\t");
+            Field[] fields = new Field[s.length-4];
+            for ( int i = 4; i < s.length; i++ ) {
+                String[] f = s[i].split(":");
+                fields[i-4] = new Field(Long.parseLong(f[0]),Double.parseDouble(f[1]),Double.parseDouble(f[2]));
+            };
+            return new Source(s[0],Long.parseLong(s[1]),Long.parseLong(s[2]),Long.parseLong(s[3]),fields);
+        }
+    }
+
+    /* The statistics of a stream of values are collected in an MRData, so that they can be
+     * computed by a distributed aggregation (see TopLevel.analyze): a tuple (rows,fields),
+     * where fields contains a triple (registers,min,max) for each tuple component.
+     * The registers are a HyperLogLog sketch that estimates the number of distinct values */
+
+    private final static int p = 12;
+    private final static int m = 1 << p;
+    private final static MR_byte zero_register = new MR_byte(0);
+
+    /** the statistics of no values */
+    static Tuple zero () {
+        return new Tuple(new MR_long(0),new Tuple());
+    }
+
+    private static double number ( MRData x ) {
+        if (x instanceof MR_int)
+            return ((MR_int)x).get();
+        else if (x instanceof MR_long)
+            return ((MR_long)x).get();
+        else if (x instanceof MR_double)
+            return ((MR_double)x).get();
+        else if (x instanceof MR_float)
+            return ((MR_float)x).get();
+        else if (x instanceof MR_short)
+            return ((MR_short)x).get();
+        return Double.NaN;
+    }
+
+    private static Tuple new_field () {
+        Tuple registers = new Tuple(m);
+        for ( int i = 0; i < m; i++ )
+            registers.set(i,zero_register);
+        return new Tuple(registers,new MR_double(Double.NaN),new MR_double(Double.NaN));
+    }
+
+    /** update the min/max of a field with the numerical value d (NaN if not numerical) */
+    private static void bounds ( Tuple f, double d ) {
+        if (Double.isNaN(d))
+            return;
+        MR_double min = (MR_double)f.get(1);
+        MR_double max = (MR_double)f.get(2);
+        if (Double.isNaN(min.get()) || d < min.get())
+            min.set(d);
+        if (Double.isNaN(max.get()) || d > max.get())
+            max.set(d);
+    }
+
+    /** add the value x to the statistics s (destructive) */
+    static Tuple add ( Tuple s, MRData x ) {
+        MR_long rows = (MR_long)s.first();
+        rows.set(rows.get()+1);
+        if (!(x instanceof Tuple))
+            return s;
+        Tuple t = (Tuple)x;
+        Tuple fields = (Tuple)s.second();
+        if (fields.size() == 0 && t.size() > 0) {
+            fields = new Tuple(t.size());
+            for ( int i = 0; i < t.size(); i++ )
+                fields.set(i,new_field());
+            s.set(1,fields);
+        };
+        for ( int i = 0; i < t.size() && i < fields.size(); i++ ) {
+            Tuple f = (Tuple)fields.get(i);
+            MRData e = t.get(i);
+            Tuple registers = (Tuple)f.first();
+            int h = MRContainer.hash(e);
+            int j = h >>> (32-p);
+            int rank = Math.min(Integer.numberOfLeadingZeros(h << p)+1,32-p+1);
+            if (rank > ((MR_byte)registers.get(j)).get())
+                registers.set(j,new MR_byte(rank));
+            bounds(f,number(e));
+        };
+        return s;
+    }
+
+    /** merge the statistics s and t of two streams of values (destructive on s) */
+    static Tuple merge ( Tuple s, Tuple t ) {
+        MR_long rows = (MR_long)s.first();
+        rows.set(rows.get()+((MR_long)t.first()).get());
+        Tuple xs = (Tuple)s.second();
+        Tuple ys = (Tuple)t.second();
+        if (xs.size() == 0) {
+            s.set(1,ys);
+            return s;
+        };
+        for ( int i = 0; i < xs.size() && i < ys.size(); i++ ) {
+            Tuple fx = (Tuple)xs.get(i);
+            Tuple fy = (Tuple)ys.get(i);
+            Tuple rx = (Tuple)fx.first();
+            Tuple ry = (Tuple)fy.first();
+            for ( int j = 0; j < m; j++ )
+                if (((MR_byte)ry.get(j)).get() > ((MR_byte)rx.get(j)).get())
+                    rx.set(j,ry.get(j));
+            bounds(fx,((MR_double)fy.get(1)).get());
+            bounds(fx,((MR_double)fy.get(2)).get());
+        };
+        return s;
+    }
+
+    /** the HyperLogLog estimate of the number of distinct values */
+    private static long distinct ( Tuple registers ) {
+        double sum = 0.0;
+        int zeros = 0;
+        for ( int i = 0; i < m; i++ ) {
+            byte r = ((MR_byte)registers.get(i)).get();
+            sum += 1.0/(1L << r);
+            if (r == 0)
+                zeros++;
+        };
+        double e = 0.7213/(1.0+1.079/m)*m*m/sum;
+        if (e <= 2.5*m && zeros > 0)
+            e = m*Math.log((double)m/zeros);   // small range correction
+        else if (e > (1L << 32)/30.0)
+            e = -(1L << 32)*Math.log(1.0-e/(1L << 32));  // large range correction
+        return Math.round(e);
+    }
+
+    /** the statistics s of the data source stored at path */
+    static Source source ( String path, Tuple s ) {
+        long rows = ((MR_long)s.first()).get();
+        Tuple fs = (Tuple)s.second();
+        Field[] fields = new Field[fs.size()];
+        for ( int i = 0; i < fs.size(); i++ ) {
+            Tuple f = (Tuple)fs.get(i);
+            fields[i] = new Field(Math.min(rows,distinct((Tuple)f.first())),
+                                  ((MR_double)f.get(1)).get(),((MR_double)f.get(2)).get());
+        };
+        long[] info = file_info(path);
+        if (info == null)
+            info = new long[]{ 0, 0 };
+        return new Source(path,rows,info[0],info[1],fields);
+    }
+
+    /** the size and the modification time of a file or directory (null if it doesn't exist) */
+    private static long[] file_info ( String path ) {
+        try {
+            Path p = new Path(path);
+            if (Plan.conf == null && local_conf == null)
+                local_conf = new Configuration();
+            FileSystem fs = p.getFileSystem((Plan.conf == null) ? local_conf : Plan.conf);
+            if (!fs.exists(p))
+                return null;
+            return new long[]{ fs.getContentSummary(p).getLength(),
+                               fs.getFileStatus(p).getModificationTime() };
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static void load () {
+        if (catalog != null)
+            return;
+        catalog = new HashMap<String,Source>();
+        if (Config.statistics_file == null || !new File(Config.statistics_file).exists())
+            return;
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(Config.statistics_file));
+            for ( String line = in.readLine(); line != null; line = in.readLine() )
+                if (!line.trim().equals("")) {
+                    Source s = Source.parse(line);
+                    catalog.put(s.path,s);
+                };
+            in.close();
+        } catch (Exception ex) {
+            System.err.println("*** Cannot read the statistics catalog "+Config.statistics_file+": "+ex);
+        }
+    }
+
+    private static void save () {
+        if (Config.statistics_file == null)
+            return;
+        try {
+            PrintStream out = new PrintStream(Config.statistics_file);
+            for ( Source s: catalog.values() )
+                out.println(s);
+            out.close();
+        } catch (IOException ex) {
+            System.err.println("*** Cannot write the statistics catalog "+Config.statistics_file+": "+ex);
+        }
+    }
+
+    /** the statistics of the data source stored at path (null if unknown or out of date) */
+    static Source lookup ( String path ) {
+        load();
+        Source s = catalog.get(path);
+        if (s == null)
+            return null;
+        long[] info = file_info(path);
+        if (info == null || info[0] != s.bytes || info[1] != s.modified)
+            return null;
+        return s;
+    }
+
+    /** the path of a data source expression (null if it is not a data source) */
+    static String source_path ( Tree e ) {
+        if (e.is_variable()) {
+            Tree d = Translator.global_vars.lookup(e.toString());
+            return (d == null) ? null : source_path(d);
+        };
+        if (!e.is_node() || !((Node)e).name().equals("call"))
+            return null;
+        // call(source,parser,path,...) or call(source,source_num,parser,path,...)
+        Trees args = ((Node)e).children();
+        if (args.length() < 3 || !args.head().equals(new VariableLeaf("source")))
+            return null;
+        if (args.nth(2).is_string())
+            return args.nth(2).stringValue();
+        if (args.length() > 3 && args.nth(3).is_string())
+            return args.nth(3).stringValue();
+        return null;
+    }
+
+    /** the statistics of a data source expression (null if unknown) */
+    static Source lookup ( Tree e ) {
+        String path = source_path(e);
+        return (path == null) ? null : lookup(path);
+    }
+
+    /** store the statistics of a data source in the catalog */
+    static void insert ( Source s ) {
+        load();
+        catalog.put(s.path,s);
+        version++;
+        save();
+        if (Config.trace)
+            System.out.println("Statistics of "+s);
+    }
+
+    /** collect the statistics of all the values of a data source in memory */
+    static Source analyze ( String path, Iterable<MRData> values ) {
+        Tuple c = zero();
+        for ( MRData x: values )
+            add(c,x);
+        Source s = source(path,c);
+        insert(s);
+        return s;
+    }
+
+    /** collect the statistics of a data source during its first scan;
+     *  the statistics are stored when the scan is complete */
+    static Bag collect ( final String path, final Bag values ) {
+        if (Config.hadoop_mode || lookup(path) != null)
+            return values;
+        final Tuple c = zero();
+        final Iterator<MRData> i = values.iterator();
+        return new Bag(new BagIterator () {
+                boolean done = false;
+                public boolean hasNext () {
+                    if (i.hasNext())
+                        return true;
+                    if (!done) {
+                        done = true;
+                        insert(source(path,c));
+                    };
+                    return false;
+                }
+                public MRData next () {
+                    MRData x = i.next();
+                    add(c,x);
+                    return x;
+                }
+            });
+    }
+
+    /** remove all statistics */
+    static void clear () {
+        catalog = new HashMap<String,Source>();
+        version++;
+        save();
+    }
+}
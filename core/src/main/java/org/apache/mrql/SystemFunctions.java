@@ -48,6 +48,11 @@ final public class SystemFunctions {
         return Evaluator.evaluator.distribute(peerName,s);
     }
 
+    // used by the distributed aggregation of the analyze command (see Statistics)
+    public static MRData statistics_zero () { return Statistics.zero(); }
+    public static MRData statistics_add ( MRData s, MRData x ) { return Statistics.add((Tuple)s,x); }
+    public static MRData statistics_merge ( MRData s, MRData t ) { return Statistics.merge((Tuple)s,(Tuple)t); }
+
     public static MR_bool lt ( MR_short x, MR_short y ) { return (x.get() < y.get()) ? true_value : false_value; }
     public static MR_bool lt ( MR_int x, MR_int y ) { return (x.get() < y.get()) ? true_value : false_value; }
     public static MR_bool lt ( MR_long x, MR_long y ) { return (x.get() < y.get()) ? true_value : false_value; }
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.apache.mrql.gen.Tree;
+import org.junit.BeforeClass;
+
+import junit.framework.TestCase;
+
+/** Tests the bytecode that BytecodeCompiler generates for the functional arguments of plans */
+public abstract class BytecodeCompilerTest extends TestCase {
+	abstract protected Evaluator createEvaluator() throws Exception;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		ClassImporter.load_classes();
+		new TopLevel();
+	}
+
+	public void setUp() throws Exception {
+		createEvaluator();
+		Translator.global_reset();
+		Config.max_bag_size_print = -1;
+		MRQL.evaluate("E = source(line,\"../tests/data/employee.txt\",\",\",type(<name:string,dno:int,address:string>));"
+			      +"D = source(line,\"../tests/data/department.txt\",\",\",type(<name:string,dno:int>));"
+			      +"P = source(line,\"../tests/data/points.txt\",\",\",type(<X:double,Y:double>));");
+	}
+
+	public void tearDown() throws IOException {
+		Config.compile_functional_arguments = true;
+		Config.bytecode_only = false;
+		Compiler.clean();
+		if (Config.hadoop_mode) {
+			Plan.clean();
+			Evaluator.evaluator.shutdown(Plan.conf);
+		}
+	}
+
+	/** loads the generated classes from memory only */
+	private static class GeneratedClassLoader extends ClassLoader {
+		final HashMap<String,byte[]> classes;
+
+		GeneratedClassLoader ( HashMap<String,byte[]> classes ) {
+			super(BytecodeCompilerTest.class.getClassLoader());
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass ( String name ) throws ClassNotFoundException {
+			byte[] b = classes.get(name);
+			if (b == null)
+				throw new ClassNotFoundException(name);
+			return defineClass(name,b,0,b.length);
+		}
+	}
+
+	private static MRData evaluate ( String plan ) throws Exception {
+		if (Config.hadoop_mode)
+			Evaluator.evaluator.initialize_query();
+		MRData res = Interpreter.evalE(Tree.parse(plan),null);
+		if (res instanceof MR_dataset)
+			res = Plan.collect(((MR_dataset)res).dataset());
+		if (res instanceof Bag)
+			((Bag)res).materialize();
+		return res;
+	}
+
+	/** generate the bytecode of the functional arguments of the query plan, check that
+	 *  the JVM verifier accepts all generated classes, and that the compiled plan
+	 *  (with no fallback to the Java compiler) returns the same result as the interpreted plan */
+	private void check ( String query ) throws Exception {
+		Translator.reset();
+		Config.compile_functional_arguments = false;
+		Tree plan = Interpreter.translate_expression(Session.parse_query(query));
+		assertNotNull("Cannot translate: "+query,plan);
+		String splan = plan.toString();
+		MRData expected = evaluate(splan);
+		BytecodeCompiler bc = new BytecodeCompiler("UserFunctions_"+(Compiler.lambda_num++));
+		bc.compile(Tree.parse(splan));
+		assertFalse("No functional argument was compiled: "+query,bc.classes.isEmpty());
+		GeneratedClassLoader loader = new GeneratedClassLoader(bc.classes);
+		for ( String name: bc.classes.keySet() )
+			// linking the class runs the JVM verifier, which throws a VerifyError if the class is invalid
+			Class.forName(name,true,loader);
+		Config.compile_functional_arguments = true;
+		Config.bytecode_only = true;
+		Tree compiled = Compiler.compile(Tree.parse(splan),null);
+		assertFalse("The plan was not compiled: "+query,compiled.toString().equals(splan));
+		MRData result = evaluate(compiled.toString());
+		assertEquals("Wrong result of the compiled plan of: "+query+"\nExpected: "+expected+"\nFound: "+result,
+			     0,expected.compareTo(result));
+	}
+
+	public void testSelectWhere() throws Exception {
+		check("select e.name from e in E where e.dno > 10");
+	}
+
+	public void testConditional() throws Exception {
+		check("select if e.dno > 10 then e.dno*2 else e.dno-1 from e in E");
+	}
+
+	public void testDoubles() throws Exception {
+		check("select (p.X*1.5,p.Y/2.0) from p in P where p.X < 5.0");
+	}
+
+	public void testStrings() throws Exception {
+		check("select (e.name,e.address) from e in E where e.name <> \"Mary Jones\"");
+	}
+
+	public void testGroupBy() throws Exception {
+		check("select (k,count(e),sum(e.dno)) from e in E group by k: e.dno");
+	}
+
+	public void testOrderBy() throws Exception {
+		check("select e.name from e in E order by e.name desc");
+	}
+
+	public void testJoin() throws Exception {
+		check("select (e.name,d.name) from e in E, d in D where e.dno = d.dno");
+	}
+
+	public void testNestedLambda() throws Exception {
+		check("select (e.name,select x*e.dno from x in [1,2,3] where x < e.dno/10+1) from e in E");
+	}
+
+	public void testCapturedVariables() throws Exception {
+		check("select (k,select x.dno+k from x in e) from e in E group by k: e.dno");
+	}
+
+	public void testUserFunction() throws Exception {
+		MRQL.evaluate("function bc_fact ( n: int ): long { if n <= 0 then 1 as long else n*bc_fact(n-1) };");
+		check("select bc_fact(e.dno/10) from e in E");
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.io.SequenceFile;
+
+import junit.framework.TestCase;
+
+/** Tests the loser-tree merge of ExternalMerge over sorted sequence-file runs,
+ *  including merges in steps through temporary runs when the fan-in is smaller than the runs */
+public class ExternalMergeTest extends TestCase {
+	private boolean local_mode;
+	private String tmpDirectory;
+	private int max_merged_streams;
+	private Configuration conf;
+	private FileSystem fs;
+	private File dir;
+
+	public void setUp() throws IOException {
+		local_mode = Config.local_mode;
+		tmpDirectory = Config.tmpDirectory;
+		max_merged_streams = Config.max_merged_streams;
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+		dir = new File(System.getProperty("java.io.tmpdir"),"mrql-merge-test-"+System.nanoTime());
+		Config.local_mode = true;
+		Config.tmpDirectory = new File(dir,"tmp").getPath();
+	}
+
+	public void tearDown() throws IOException {
+		Config.local_mode = local_mode;
+		Config.tmpDirectory = tmpDirectory;
+		Config.max_merged_streams = max_merged_streams;
+		fs.delete(new Path(dir.getPath()),true);
+	}
+
+	/** write a sorted run of (key,(key,run)) pairs, for each key in keys */
+	private ExternalMerge.SequenceRun run ( int run, int[] keys, SequenceFile.CompressionType compression )
+		throws IOException {
+		Path path = new Path(new File(dir,"run"+run).getPath());
+		SequenceFile.Writer writer
+			= SequenceFile.createWriter(fs,conf,path,MRContainer.class,MRContainer.class,compression);
+		for ( int key: keys )
+			writer.append(new MRContainer(new MR_int(key)),
+				      new MRContainer(new Tuple(new MR_int(key),new MR_int(run))));
+		writer.close();
+		return new ExternalMerge.SequenceRun(fs,path,conf,false);
+	}
+
+	/** merge the runs with the given fan-in and compare the result with a stable sort of all pairs */
+	private void check ( int[][] keys, int fan_in, SequenceFile.CompressionType compression )
+		throws IOException {
+		Config.max_merged_streams = fan_in;
+		ArrayList<ExternalMerge.SequenceRun> runs = new ArrayList<ExternalMerge.SequenceRun>();
+		ArrayList<MRData> expected = new ArrayList<MRData>();
+		for ( int i = 0; i < keys.length; i++ ) {
+			runs.add(run(i,keys[i],compression));
+			for ( int key: keys[i] )
+				expected.add(new Tuple(new MR_int(key),new MR_int(i)));
+		};
+		Collections.sort(expected);   // the pairs of equal keys are ordered by run
+		ArrayList<MRData> result = new ArrayList<MRData>();
+		for ( MRData v: ExternalMerge.merge(runs,conf) )
+			result.add(v);
+		assertEquals(expected,result);
+		for ( int i = 0; i < keys.length; i++ )
+			assertTrue(new File(dir,"run"+i).exists());
+		File tmp = new File(Config.tmpDirectory);
+		String[] left = tmp.list();
+		assertTrue("Temporary runs were not deleted: "+Arrays.toString(left),
+			   left == null || left.length == 0);
+	}
+
+	private void check ( int[][] keys, int fan_in ) throws IOException {
+		check(keys,fan_in,SequenceFile.CompressionType.NONE);
+	}
+
+	/** n sorted keys of the form step*i+offset */
+	private static int[] keys ( int n, int step, int offset ) {
+		int[] ks = new int[n];
+		for ( int i = 0; i < n; i++ )
+			ks[i] = step*i+offset;
+		return ks;
+	}
+
+	public void testOneRun() throws IOException {
+		check(new int[][]{ keys(10,1,0) },100);
+		check(new int[][]{ keys(0,1,0) },100);
+	}
+
+	public void testTwoRuns() throws IOException {
+		check(new int[][]{ keys(10,2,0), keys(10,2,1) },100);
+		check(new int[][]{ keys(0,1,0), keys(10,1,0) },100);
+		check(new int[][]{ keys(10,1,0), keys(0,1,0) },100);
+	}
+
+	public void testThreeRuns() throws IOException {
+		check(new int[][]{ keys(7,3,0), keys(0,1,0), keys(9,1,2) },100);
+		check(new int[][]{ keys(5,1,0), keys(5,1,0), keys(5,1,0) },100);
+	}
+
+	public void testFiveRuns() throws IOException {
+		check(new int[][]{ keys(20,5,4), keys(0,1,0), keys(20,5,0), keys(3,7,1), keys(0,1,0) },100);
+	}
+
+	public void testFanIn() throws IOException {
+		check(new int[][]{ keys(7,3,0), keys(0,1,0), keys(9,1,2) },2);
+		check(new int[][]{ keys(20,5,4), keys(0,1,0), keys(20,5,0), keys(3,7,1), keys(0,1,0) },2);
+		check(new int[][]{ keys(20,5,4), keys(0,1,0), keys(20,5,0), keys(3,7,1), keys(0,1,0) },3);
+		check(new int[][]{ keys(0,1,0), keys(0,1,0), keys(0,1,0) },2);
+	}
+
+	public void testRecordCompressed() throws IOException {
+		check(new int[][]{ keys(20,5,4), keys(0,1,0), keys(20,5,0), keys(3,7,1), keys(0,1,0) },
+		      2,SequenceFile.CompressionType.RECORD);
+		check(new int[][]{ keys(10,2,0), keys(10,2,1) },
+		      100,SequenceFile.CompressionType.BLOCK);
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+
+import junit.framework.TestCase;
+
+/** Tests the hash-based group-by of MapReduceAlgebra, whose hash table is spilled
+ *  into partitions that are grouped recursively when it holds too many values */
+public class HashGroupByTest extends TestCase {
+	private boolean hadoop_mode;
+	private boolean testing;
+	private long max_materialized_bag;
+
+	public void setUp() {
+		hadoop_mode = Config.hadoop_mode;
+		testing = Config.testing;
+		max_materialized_bag = Config.max_materialized_bag;
+		Config.hadoop_mode = true;   // bags are spilled in hadoop mode only
+		Config.testing = true;
+		Config.max_materialized_bag = 100;
+		if (Plan.conf == null)
+			Plan.conf = new Configuration();
+	}
+
+	public void tearDown() {
+		Config.hadoop_mode = hadoop_mode;
+		Config.testing = testing;
+		Config.max_materialized_bag = max_materialized_bag;
+	}
+
+	/** the pairs (i mod keys,i), for i in 0..n-1 */
+	private static Bag pairs ( int n, int keys ) {
+		Bag s = new Bag();
+		for ( int i = 0; i < n; i++ )
+			s.add(new Tuple(new MR_int(i % keys),new MR_int(i)));
+		return s;
+	}
+
+	/** the groups of a group-by result, with the values of each group sorted */
+	private static Map<MRData,List<MRData>> groups ( Bag res ) {
+		Map<MRData,List<MRData>> m = new HashMap<MRData,List<MRData>>();
+		for ( MRData e: res ) {
+			Tuple p = (Tuple)e;
+			assertNull("Duplicate group "+p.first(),m.get(p.first()));
+			List<MRData> vs = new ArrayList<MRData>();
+			for ( MRData v: (Bag)p.second() )
+				vs.add(v);
+			Collections.sort(vs);
+			m.put(p.first(),vs);
+		};
+		return m;
+	}
+
+	private static void check ( int n, int keys ) {
+		Map<MRData,List<MRData>> expected = groups(MapReduceAlgebra.groupBy(pairs(n,keys)));
+		assertEquals(Math.min(n,keys),expected.size());
+		assertEquals(expected,groups(MapReduceAlgebra.groupBy(pairs(n,keys),false)));
+	}
+
+	public void testInMemory() {
+		check(50,7);
+	}
+
+	public void testSpilledPartitions() {
+		// the hash table overflows and its partitions overflow again
+		check(5000,500);
+	}
+
+	public void testHotKey() {
+		// the partitions never shrink, so the group-by falls back to sorting
+		check(1000,1);
+		check(3000,3);
+	}
+
+	public void testOrdered() {
+		MRData last = null;
+		for ( MRData e: MapReduceAlgebra.groupBy(pairs(3000,300),true) ) {
+			MRData key = ((Tuple)e).first();
+			if (last != null)
+				assertTrue(last.compareTo(key) < 0);
+			last = key;
+		}
+	}
+
+	public void testMapReduce() {
+		Function m = new Function () {
+				public MRData eval ( MRData x ) {
+					return new Bag(new Tuple(new MR_int(((MR_int)x).get() % 300),x));
+				}
+			};
+		Function r = new Function () {
+				public MRData eval ( MRData x ) {
+					Tuple p = (Tuple)x;
+					return new Bag(new Tuple(p.first(),new MR_int(((Bag)p.second()).size())));
+				}
+			};
+		Bag s = new Bag();
+		for ( int i = 0; i < 3000; i++ )
+			s.add(new MR_int(i));
+		Map<MRData,MRData> counts = new HashMap<MRData,MRData>();
+		for ( MRData e: MapReduceAlgebra.mapReduce(m,r,s,false) )
+			counts.put(((Tuple)e).first(),((Tuple)e).second());
+		assertEquals(300,counts.size());
+		for ( MRData c: counts.values() )
+			assertEquals(new MR_int(10),c);
+		MRData last = null;
+		for ( MRData e: MapReduceAlgebra.mapReduce(m,r,s,true) ) {
+			MRData key = ((Tuple)e).first();
+			if (last != null)
+				assertTrue(last.compareTo(key) < 0);
+			last = key;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import junit.framework.TestCase;
+
+/** Tests that MR_string values behave the same whether they are decoded strings
+ *  or UTF-8 encodings read from a binary stream that are not decoded yet */
+public class MRStringTest extends TestCase {
+	// in UTF-16 order, the supplementary character U+1F600 comes before U+FF61, but not in code-point order
+	private static final String[] strings
+		= { "", "a", "ab", "abc", "b", "\u00E9", "\u0800", "\uFF61", "\uD83D\uDE00", "a\uD83D\uDE00b", "a\uFF61b" };
+
+	/** the serialization of a string (with its type tag) */
+	private static byte[] serialize ( MRData s ) throws IOException {
+		DataOutputBuffer out = new DataOutputBuffer();
+		s.write(out);
+		return Arrays.copyOf(out.getData(),out.getLength());
+	}
+
+	/** a string read from a binary stream, which keeps its UTF-8 encoding */
+	private static MR_string encoded ( String s ) throws IOException {
+		byte[] b = serialize(new MR_string(s));
+		DataInputBuffer in = new DataInputBuffer();
+		in.reset(b,b.length);
+		assertEquals(MRContainer.STRING,in.readByte());
+		return MR_string.read(in);
+	}
+
+	private static int sign ( int c ) {
+		return (c < 0) ? -1 : (c > 0) ? 1 : 0;
+	}
+
+	/** the expected order: by unicode code points */
+	private static int expected ( String x, String y ) {
+		int i = 0;
+		for ( ; i < x.length() && i < y.length(); i += Character.charCount(x.codePointAt(i)) )
+			if (x.codePointAt(i) != y.codePointAt(i))
+				return sign(x.codePointAt(i)-y.codePointAt(i));
+		return sign((x.length()-i)-(y.length()-i));
+	}
+
+	public void testCompare() throws IOException {
+		for ( String x: strings )
+			for ( String y: strings ) {
+				int c = expected(x,y);
+				String msg = x+" vs "+y;
+				assertEquals(msg,c,sign(new MR_string(x).compareTo(new MR_string(y))));
+				assertEquals(msg,c,sign(new MR_string(x).compareTo(encoded(y))));
+				assertEquals(msg,c,sign(encoded(x).compareTo(new MR_string(y))));
+				assertEquals(msg,c,sign(encoded(x).compareTo(encoded(y))));
+				byte[] bx = serialize(new MR_string(x));
+				byte[] by = serialize(new MR_string(y));
+				assertEquals(msg,c,sign(MRContainer.compare(bx,0,bx.length,by,0,by.length,new int[1])));
+			}
+	}
+
+	public void testSupplementary() throws IOException {
+		String smiley = "\uD83D\uDE00";
+		assertTrue(smiley.compareTo("\uFF61") < 0);
+		assertTrue(new MR_string(smiley).compareTo(new MR_string("\uFF61")) > 0);
+		assertTrue(encoded(smiley).compareTo(new MR_string("\uFF61")) > 0);
+		assertEquals(smiley,encoded(smiley).get());
+		assertEquals(4,new MR_string(smiley).utf8_length());
+	}
+
+	public void testEqualsHashCode() throws IOException {
+		for ( String x: strings )
+			for ( String y: strings ) {
+				boolean eq = x.equals(y);
+				MR_string[] xs = { new MR_string(x), encoded(x) };
+				MR_string[] ys = { new MR_string(y), encoded(y) };
+				for ( MR_string sx: xs )
+					for ( MR_string sy: ys ) {
+						assertEquals(x+" vs "+y,eq,sx.equals(sy));
+						if (eq)
+							assertEquals(x,sx.hashCode(),sy.hashCode());
+					}
+			}
+	}
+
+	public void testRoundTrip() throws IOException {
+		for ( String x: strings ) {
+			byte[] b = serialize(new MR_string(x));
+			MR_string s = encoded(x);
+			// written back from its encoding, without being decoded
+			assertTrue(x,Arrays.equals(b,serialize(s)));
+			assertTrue(x,Arrays.equals(b,serialize(encoded(x))));
+			DataInputBuffer in = new DataInputBuffer();
+			in.reset(b,b.length);
+			assertEquals(x,MRContainer.read(in),new MR_string(x));
+			// readFields replaces a decoded value
+			MR_string r = new MR_string("old");
+			in.reset(b,1,b.length-1);
+			r.readFields(in);
+			assertEquals(x,r.get());
+			assertTrue(x,Arrays.equals(b,serialize(r)));
+		}
+	}
+
+	public void testSet() throws IOException {
+		MR_string s = encoded("abc");
+		s.set("\uD83D\uDE00");
+		assertEquals("\uD83D\uDE00",s.get());
+		assertEquals(new MR_string("\uD83D\uDE00"),s);
+		assertTrue(Arrays.equals(serialize(new MR_string("\uD83D\uDE00")),serialize(s)));
+	}
+}
@@ -114,6 +114,7 @@ public abstract class QueryTest extends TestCase {
 
 	public void testLoop() throws Exception {
 		assertEquals(0, queryAndCompare(new File(queryDir, "loop_1.mrql"), resultDir));
+		assertEquals(0, queryAndCompare(new File(queryDir, "loop_2.mrql"), resultDir));
 	}
 
 	public void testMatrix() throws Exception {
@@ -136,6 +137,10 @@ public abstract class QueryTest extends TestCase {
 		assertEquals(0, queryAndCompare(new File(queryDir, "relational_join_1.mrql"), resultDir));
 	}
 
+	public void testStore() throws Exception {
+		assertEquals(0, queryAndCompare(new File(queryDir, "store_1.mrql"), resultDir));
+	}
+
 	public void testTotalAggregation() throws Exception {
 		assertEquals(0, queryAndCompare(new File(queryDir, "total_aggregation_1.mrql"), resultDir));
 		assertEquals(0, queryAndCompare(new File(queryDir, "total_aggregation_2.mrql"), resultDir));
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.mrql;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/** Tests the isolation of sessions, the parameters of prepared queries, and the result cursors */
+public abstract class SessionTest extends TestCase {
+	abstract protected Evaluator createEvaluator() throws Exception;
+
+	private Session s1, s2;
+
+	public void setUp() throws Exception {
+		createEvaluator();
+		s1 = new Session();
+		s2 = new Session();
+	}
+
+	public void tearDown() throws IOException {
+		s1.close();
+		s2.close();
+		if (Config.compile_functional_arguments)
+			Compiler.clean();
+	}
+
+	private static int intValue ( MRData x ) {
+		return ((MR_int)x).get();
+	}
+
+	public void testIsolation() throws Exception {
+		s1.evaluate("x = 1; function f ( y: int ): int { y+1 };");
+		s2.evaluate("x = 2; function f ( y: int ): int { y*10 };");
+		assertEquals(1, intValue(s1.query("x")));
+		assertEquals(2, intValue(s2.query("x")));
+		// the same query has a different plan in each session
+		assertEquals(2, intValue(s1.query("f(1)")));
+		assertEquals(10, intValue(s2.query("f(1)")));
+		assertEquals(3, intValue(s1.query("f(2)")));
+		assertEquals(20, intValue(s2.query("f(2)")));
+		s1.evaluate("x = 3;");
+		assertEquals(3, intValue(s1.query("x")));
+		assertEquals(2, intValue(s2.query("x")));
+		// a new session has none of these definitions
+		Session s3 = new Session();
+		try {
+			s3.query("x");
+			fail("The variable x is defined in a new session");
+		} catch (Error ex) {
+		} finally {
+			s3.close();
+		}
+		// closing a session leaves the others intact
+		s1.close();
+		assertEquals(10, intValue(s2.query("f(1)")));
+	}
+
+	public void testClosed() throws Exception {
+		s1.close();
+		try {
+			s1.query("1+1");
+			fail("A closed session evaluated a query");
+		} catch (Error ex) {
+		}
+	}
+
+	public void testParameters() throws Exception {
+		s1.evaluate("E = [1..10];");
+		Session.Query q = s1.prepare("select x from x in E where x > d and x < e","d","e");
+		try {
+			q.execute();
+			fail("A query with unbound parameters was evaluated");
+		} catch (Error ex) {
+		}
+		q.bind("d",new MR_int(2)).bind("e",new MR_int(6));
+		assertEquals(3, ((Bag)q.execute()).size());
+		q.bind("e",new MR_int(11));
+		assertEquals(8, ((Bag)q.execute()).size());
+		try {
+			q.bind("f",new MR_int(1));
+			fail("An unknown parameter was bound");
+		} catch (Error ex) {
+		}
+		Session.Query sq = s1.prepare("n+\"!\"","n").bind("n",new MR_string("abc"));
+		assertEquals(new MR_string("abc!"),sq.execute());
+		// the parameters are not visible after the query
+		try {
+			s1.query("d");
+			fail("The query parameter d is visible in the session");
+		} catch (Error ex) {
+		}
+	}
+
+	public void testShadowedVariable() throws Exception {
+		s1.evaluate("d = 5;");
+		Session.Query q = s1.prepare("d+1","d").bind("d",new MR_int(10));
+		assertEquals(11, intValue(q.execute()));
+		assertEquals(5, intValue(s1.query("d")));
+		q.bind("d",new MR_int(20));
+		assertEquals(21, intValue(q.execute()));
+		assertEquals(5, intValue(s1.query("d")));
+		assertEquals(6, intValue(s1.query("d+1")));
+	}
+
+	public void testCursor() throws Exception {
+		s1.evaluate("E = [1..2500];");
+		int n = 0;
+		long sum = 0;
+		ResultCursor c = s1.cursor("select x from x in E where x > 500");
+		while (c.hasNext()) {
+			sum += intValue(c.next());
+			n++;
+		};
+		assertEquals(2000, n);
+		assertEquals(2000L*(501+2500)/2, sum);
+		Session.Query q = s1.prepare("select x from x in E where x <= m","m").bind("m",new MR_int(20));
+		ResultCursor b = q.cursor(7);
+		assertEquals(7, b.next_batch(7).size());
+		assertEquals(7, b.next_batch(7).size());
+		assertEquals(6, b.next_batch(7).size());
+		assertEquals(0, b.next_batch(7).size());
+		n = 0;
+		for ( MRData x: q )
+			n++;
+		assertEquals(20, n);
+	}
+}